@@ -1,7 +1,5 @@
 package com.rogerang.phunwaresample;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
 
 import android.app.Fragment;
@@ -9,19 +7,22 @@ import android.app.LoaderManager;
 import android.content.Intent;
 import android.content.Loader;
 import android.graphics.Bitmap;
-import android.graphics.Matrix;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.ArrayAdapter;
 import android.widget.ImageView;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import com.rogerang.phunwaresample.content.ScheduleItem;
+import com.rogerang.phunwaresample.content.ScheduleTextLoader;
 import com.rogerang.phunwaresample.content.Venue;
-import com.rogerang.phunwaresample.content.VenueLoader;
+import com.rogerang.phunwaresample.content.VenueRepository;
 import com.rogerang.phunwaresample.content.VenueImageLoader;
 
 /**
@@ -38,19 +39,64 @@ public class ItemDetailFragment extends Fragment implements LoaderManager.Loader
      */
     public static final String ARG_ITEM_ID = "item_id";
 
+    private static final int IMAGE_LOADER = 0;
+    private static final int SCHEDULE_LOADER = 1;
+
+    // image loader arguments, the size to decode to
+    private static final String ARG_IMAGE_WIDTH = "image_width";
+    private static final String ARG_IMAGE_HEIGHT = "image_height";
+
     /**
      * The content this fragment is presenting.
      */
     private Venue mItem;
 
-    // venue image
+    // venue image, sized to the header it sits in
+    private View mHeaderView;
     private ImageView mImageView;
     private View noImageView;
 
-	// date and time formats for schedule items
-	private final SimpleDateFormat dateFormat = new SimpleDateFormat("E M/d");
-	private final SimpleDateFormat timeFormat = new SimpleDateFormat("h:mma");
+    // schedule lines below the venue details, formatted by ScheduleTextLoader
+    private ArrayAdapter<String> mScheduleAdapter;
+
+    private final LoaderManager.LoaderCallbacks<List<String>> mScheduleCallbacks =
+            new LoaderManager.LoaderCallbacks<List<String>>() {
+        @Override
+        public Loader<List<String>> onCreateLoader(int id, Bundle args) {
+            return new ScheduleTextLoader(getActivity(), mItem);
+        }
+
+        @Override
+        public void onLoadFinished(Loader<List<String>> loader, List<String> data) {
+            showSchedule(data);
+        }
+
+        @Override
+        public void onLoaderReset(Loader<List<String>> loader) {
+            mScheduleAdapter.clear();
+        }
+    };
 
+    // a venue streamed in during the first load may not be in the repository
+    // until the load completes, look it up again as new data is published
+    private final VenueRepository.OnPublishListener mPublishListener =
+            new VenueRepository.OnPublishListener() {
+        @Override
+        public void onPublish(VenueRepository.Snapshot snapshot) {
+            Venue venue = snapshot.getVenue(getArguments().getLong(ARG_ITEM_ID));
+            if (venue == null) {
+                return;
+            }
+            VenueRepository.getInstance().removeOnPublishListener(this);
+
+            mItem = venue;
+            if (getView() != null) {
+                // already past onCreateView and onActivityCreated
+                showItem();
+                loadItemContent();
+            }
+        }
+    };
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -65,70 +111,84 @@ public class ItemDetailFragment extends Fragment implements LoaderManager.Loader
 
         if (getArguments().containsKey(ARG_ITEM_ID)) {
             // Load the content specified by the fragment arguments.
-        	// TODO should use different storage (cache?)
-            mItem = VenueLoader.ITEM_MAP.get(getArguments().getLong(ARG_ITEM_ID));            
+            mItem = VenueRepository.getInstance().getVenue(getArguments().getLong(ARG_ITEM_ID));
+            if (mItem == null) {
+                VenueRepository.getInstance().addOnPublishListener(mPublishListener);
+            }
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        VenueRepository.getInstance().removeOnPublishListener(mPublishListener);
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
         View rootView = inflater.inflate(R.layout.fragment_item_detail, container, false);
 
-        // Show the content 
-        if (mItem != null) {            
-        	mImageView = (ImageView) rootView.findViewById(R.id.imageView1);        	
-        	noImageView = rootView.findViewById(R.id.noImageText);     
-
-			String txt = mItem.getName();
-            ((TextView) rootView.findViewById(R.id.venueDetailNameText)).setText(txt != null ? txt : "");
-
-			txt = mItem.getAddress();
-            ((TextView) rootView.findViewById(R.id.venueDetailAddressText)).setText(txt != null ? txt : "");
-
-			txt = mItem.getPhone();
-			TextView tv = (TextView) rootView.findViewById(R.id.venueDetailPhoneText);
-			tv.setOnClickListener(this);
-			if (txt != null && !txt.isEmpty()) {
-				tv.setText(txt);
-			} else {
-				tv.setVisibility(View.GONE);
-			}
-
-            // populate schedule list
-            List<ScheduleItem> scheduleList = mItem.getSchedule();
-            if (scheduleList != null && !scheduleList.isEmpty()) {
-				ViewGroup parent = (ViewGroup) rootView.findViewById(R.id.item_detail);
+        // venue details scroll with the schedule as the list header
+        ListView listView = (ListView) rootView.findViewById(R.id.scheduleList);
+        View headerView = inflater.inflate(R.layout.fragment_item_detail_header, listView, false);
+        listView.addHeaderView(headerView, null, false);
+        mHeaderView = headerView;
+        mScheduleAdapter = new ArrayAdapter<String>(getActivity(), R.layout.schedule_list_entry) {
+            @Override
+            public boolean areAllItemsEnabled() {
+                return false;
+            }
 
-				for (ScheduleItem item : scheduleList) {
-					addScheduleItem(inflater, parent, item);
-				}
+            @Override
+            public boolean isEnabled(int position) {
+                return false;
             }
+        };
+        listView.setAdapter(mScheduleAdapter);
+
+        // Show the content 
+        if (mItem != null) {            
+            showItem();
         }
 
         return rootView;
     }
 
-	private void addScheduleItem(LayoutInflater inflater,  ViewGroup parent, ScheduleItem item) {
-		Date startDate = item.getStartDate();
-		Date endDate = item.getEndDate();
+    /**
+     * Fill in the header with the venue details.
+     */
+    private void showItem() {
+        mImageView = (ImageView) mHeaderView.findViewById(R.id.imageView1);
+        noImageView = mHeaderView.findViewById(R.id.noImageText);
 
-		if (startDate != null && endDate != null) {
-			TextView tv = (TextView) inflater.inflate(R.layout.schedule_list_entry, parent, false);
-			String startDateStr = dateFormat.format(startDate);
-			String schedule =  startDateStr + " " + timeFormat.format(startDate) + " to ";
+        String txt = mItem.getName();
+        ((TextView) mHeaderView.findViewById(R.id.venueDetailNameText)).setText(txt != null ? txt : "");
 
-			// don't print end date if the same as start date
-			String endDateStr  = dateFormat.format(endDate);
-			if (!endDateStr.equals(startDateStr)) {
-				schedule += endDateStr + " ";
-			}
-			schedule += timeFormat.format(endDate);
+        txt = mItem.getAddress();
+        ((TextView) mHeaderView.findViewById(R.id.venueDetailAddressText)).setText(txt != null ? txt : "");
 
-			tv.setText(schedule);
-			parent.addView(tv);
-		}
-	}
+        txt = mItem.getPhone();
+        TextView tv = (TextView) mHeaderView.findViewById(R.id.venueDetailPhoneText);
+        tv.setOnClickListener(this);
+        if (txt != null && !txt.isEmpty()) {
+            tv.setText(txt);
+        } else {
+            tv.setVisibility(View.GONE);
+        }
+
+        // a schedule formatted on an earlier visit shows right away
+        showSchedule(mItem.getScheduleText());
+    }
+
+    private void showSchedule(List<String> scheduleText) {
+        mScheduleAdapter.setNotifyOnChange(false);
+        mScheduleAdapter.clear();
+        if (scheduleText != null) {
+            mScheduleAdapter.addAll(scheduleText);
+        }
+        mScheduleAdapter.notifyDataSetChanged();
+    }
     
     @Override 
     public void onActivityCreated(Bundle savedInstanceState) {
@@ -136,14 +196,25 @@ public class ItemDetailFragment extends Fragment implements LoaderManager.Loader
         
         // load image 
         if (mItem != null) {          
-        	if (mItem.getImageUrl() != null) {
-                // Prepare the loader.  Either re-connect with an existing one,
-                // or start a new one.
-                getLoaderManager().initLoader(0, null, this);
-        	}
+            loadItemContent();
         } 
     }
 
+    /**
+     * Start loading the venue image and the schedule text.
+     */
+    private void loadItemContent() {
+        if (mItem.getImageUrl() != null) {
+            loadImageWhenMeasured();
+        }
+
+        // format the schedule in the background
+        List<ScheduleItem> scheduleList = mItem.getSchedule();
+        if (scheduleList != null && !scheduleList.isEmpty()) {
+            getLoaderManager().initLoader(SCHEDULE_LOADER, null, mScheduleCallbacks);
+        }
+    }
+
 	/**
 	 * Share venue name and address for currently displayed venue.
 	 */
@@ -168,52 +239,75 @@ public class ItemDetailFragment extends Fragment implements LoaderManager.Loader
     	}
     }
 
+    /**
+     * Start the image loader once the header has its width, so the image is
+     * decoded at exactly the size it is shown.
+     */
+    private void loadImageWhenMeasured() {
+        if (mHeaderView.getWidth() > 0) {
+            loadImage(mHeaderView.getWidth());
+            return;
+        }
+
+        final ViewTreeObserver observer = mHeaderView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                int width = mHeaderView.getWidth();
+                if (width <= 0) {
+                    return true;
+                }
+                if (observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                } else {
+                    mHeaderView.getViewTreeObserver().removeOnPreDrawListener(this);
+                }
+                if (isAdded()) {
+                    loadImage(width);
+                }
+                return true;
+            }
+        });
+    }
+
+    private void loadImage(int width) {
+        // fit the width, no taller than the screen
+        DisplayMetrics metrics = new DisplayMetrics();
+        getActivity().getWindowManager().getDefaultDisplay().getMetrics(metrics);
+        Bundle args = new Bundle();
+        args.putInt(ARG_IMAGE_WIDTH, width);
+        args.putInt(ARG_IMAGE_HEIGHT, metrics.heightPixels);
+
+        // Prepare the loader.  Re-connect with an existing one of the same
+        // size, e.g. after rotating, or start a new one.
+        Loader<Bitmap> loader = getLoaderManager().getLoader(IMAGE_LOADER);
+        if (loader == null || ((VenueImageLoader) loader).isSize(width, metrics.heightPixels)) {
+            getLoaderManager().initLoader(IMAGE_LOADER, args, this);
+        } else {
+            getLoaderManager().restartLoader(IMAGE_LOADER, args, this);
+        }
+    }
+
 	@Override
 	public Loader<Bitmap> onCreateLoader(int id, Bundle args) {
-		DisplayMetrics metrics = new DisplayMetrics();
-		getActivity().getWindowManager().getDefaultDisplay().getMetrics(metrics);
-		return new VenueImageLoader(getActivity(), mItem.getImageUrl(), metrics.widthPixels, metrics.heightPixels); 
-	}
-	
-	private Bitmap scaleDownBitmap(Bitmap bitmap, int reqWidth, int reqHeight) {
-		if (reqWidth <= 0 || reqHeight <= 0) {
-			return bitmap;
-		}
-		
-	    // scale down to fit within requested dimensions
-	    int width = bitmap.getWidth();
-	    int height = bitmap.getHeight();
-	    if (reqWidth < width ||  reqHeight < height) { 	    		 
-	    	float xScale = ((float) reqWidth) / width;
-	    	float yScale = ((float) reqHeight) / height;
-	    	float scale = (xScale <= yScale) ? xScale : yScale;
-
-	    	// Create a matrix for the scaling and add the scaling data
-	    	Matrix matrix = new Matrix();
-	    	matrix.postScale(scale, scale);
-
-	    	// Create a new bitmap 
-	    	return Bitmap.createBitmap(bitmap, 0, 0, width, height, matrix, true);
-	    } else {
-	    	return bitmap;  // no scaling needed
-	    }
+		return new VenueImageLoader(getActivity(), mItem.getImageUrl(),
+				args.getInt(ARG_IMAGE_WIDTH), args.getInt(ARG_IMAGE_HEIGHT)); 
 	}
 
 	@Override
 	public void onLoadFinished(Loader<Bitmap> loader, Bitmap data) {
 		if (data != null) {
-			// scale bitmap because ImageView doesn't properly resize with scaling options
-			// TODO this is still buggy, the view sometimes still have no dimensions at this point
-			int width = mImageView.getWidth() != 0 ? mImageView.getWidth() : noImageView.getWidth();						
-			Bitmap scaledBitmap = scaleDownBitmap(data, width, data.getHeight());
+			// already decoded to the view size in the background
 			noImageView.setVisibility(View.GONE);
-			mImageView.setImageBitmap(scaledBitmap);
+			mImageView.setImageBitmap(data);
 			mImageView.setVisibility(View.VISIBLE);
 		}
 	}
 
 	@Override
 	public void onLoaderReset(Loader<Bitmap> loader) {
+		// the loader gives the bitmap back for reuse, stop drawing it
+		mImageView.setImageBitmap(null);
 		mImageView.setVisibility(View.GONE);
 		noImageView.setVisibility(View.VISIBLE);
 	}
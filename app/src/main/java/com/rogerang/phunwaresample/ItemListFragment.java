@@ -1,5 +1,6 @@
 package com.rogerang.phunwaresample;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import android.app.Activity;
@@ -11,12 +12,17 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
+import android.widget.Filter;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.rogerang.phunwaresample.content.ImagePrefetcher;
 import com.rogerang.phunwaresample.content.Venue;
 import com.rogerang.phunwaresample.content.VenueLoader;
+import com.rogerang.phunwaresample.content.VenueRepository;
+import com.rogerang.phunwaresample.content.VenueSearchIndex;
 
 /**
  * A list fragment representing a list of Venues. This fragment
@@ -29,7 +35,8 @@ import com.rogerang.phunwaresample.content.VenueLoader;
  * 
  * Uses VenueLoader to load Venue data.
  */
-public class ItemListFragment extends ListFragment implements LoaderManager.LoaderCallbacks<List<Venue>> {
+public class ItemListFragment extends ListFragment implements LoaderManager.LoaderCallbacks<List<Venue>>,
+		VenueLoader.OnVenueBatchListener, AbsListView.OnScrollListener {
 
     /**
      * The serialization (saved instance state) Bundle key representing the
@@ -48,6 +55,24 @@ public class ItemListFragment extends ListFragment implements LoaderManager.Load
      */
     private int mActivatedPosition = ListView.INVALID_POSITION;
 
+    /**
+     * Rows past the visible ones to prefetch images for, in the scroll
+     * direction and against it.
+     */
+    private static final int PREFETCH_AHEAD = 12;
+    private static final int PREFETCH_BEHIND = 4;
+
+    private ImagePrefetcher mImagePrefetcher;
+
+    // visible rows the prefetch window was last set for
+    private int mPrefetchFirst = ListView.INVALID_POSITION;
+    private int mPrefetchLast = ListView.INVALID_POSITION;
+    private int mPrefetchTotal;
+    private boolean mScrollingUp;
+
+    // load the venues streamed into the adapter came from
+    private int mBatchLoad;
+
     /**
      * A callback interface that all activities containing this fragment must
      * implement. This mechanism allows activities to be notified of item
@@ -68,6 +93,10 @@ public class ItemListFragment extends ListFragment implements LoaderManager.Load
     public class VenueAdapter extends ArrayAdapter<Venue> {
     	private final LayoutInflater mInflater;
 
+    	// all venues, the adapter itself holds those matching mConstraint
+    	private final List<Venue> mAllVenues = new ArrayList<Venue>();
+    	private CharSequence mConstraint;
+    	private VenueFilter mFilter;
     	
        	public VenueAdapter(Context context) {
     		super(context, R.layout.venue_list_entry);
@@ -81,28 +110,120 @@ public class ItemListFragment extends ListFragment implements LoaderManager.Load
     	
 
         public void setData(List<Venue> data) {
-            clear();
+            mAllVenues.clear();
             if (data != null) {
-                addAll(data);
+                mAllVenues.addAll(data);
+            }
+
+            if (isFiltered()) {
+                // the filter picks up the new search index
+                getFilter().filter(mConstraint);
+            } else {
+                showVenues(mAllVenues);
+            }
+        }
+
+        /**
+         * Append venues to the list.
+         * @param venues
+         */
+        public void addVenues(List<Venue> venues) {
+            mAllVenues.addAll(venues);
+            if (!isFiltered()) {
+                addAll(venues);
+            }
+        }
+
+        private boolean isFiltered() {
+            return mConstraint != null && mConstraint.length() > 0;
+        }
+
+        private void showVenues(List<Venue> venues) {
+            setNotifyOnChange(false);
+            clear();
+            addAll(venues);
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getItem(position).getId();
+        }
+
+        @Override
+        public Filter getFilter() {
+            if (mFilter == null) {
+                mFilter = new VenueFilter();
             }
+            return mFilter;
         }
 
     	public View getView(int position, View convertView, ViewGroup parent) {
+    		VenueViewHolder holder;
+
     		// Inflate a view template
     		if (convertView == null) {
     			convertView = mInflater.inflate(R.layout.venue_list_entry, parent, false);
+    			holder = new VenueViewHolder();
+    			holder.name = (TextView) convertView.findViewById(R.id.venueNameText);
+    			holder.address = (TextView) convertView.findViewById(R.id.venueAddressText);
+    			convertView.setTag(holder);
+    		} else {
+    			holder = (VenueViewHolder) convertView.getTag();
     		}
-    		TextView tvName = (TextView) convertView.findViewById(R.id.venueNameText);
-    		TextView tvAddress = (TextView) convertView.findViewById(R.id.venueAddressText);
 
+    		// rows are rebound on every layout pass, skip text that is already set
     		Venue venue = getItem(position);
-    		tvName.setText(venue.getName());
-    		tvAddress.setText(venue.getAddress());
+    		if (holder.venue != venue) {
+    			holder.venue = venue;
+    			holder.name.setText(venue.getDisplayName());
+    			holder.address.setText(venue.getDisplayAddress());
+    		}
     		
     		return convertView;
     	}
+
+    	/**
+    	 * Type-ahead filter backed by the repository's search index.
+    	 */
+    	private class VenueFilter extends Filter {
+    		@Override
+    		protected FilterResults performFiltering(CharSequence constraint) {
+    			// runs on a worker thread
+    			FilterResults results = new FilterResults();
+    			VenueSearchIndex index = VenueRepository.getInstance().getSnapshot().getSearchIndex();
+    			if (index != null && constraint != null && constraint.length() > 0) {
+    				List<Venue> venues = index.search(constraint);
+    				results.values = venues;
+    				results.count = venues.size();
+    			}
+    			return results;
+    		}
+
+    		@Override
+    		@SuppressWarnings("unchecked")
+    		protected void publishResults(CharSequence constraint, FilterResults results) {
+    			mConstraint = constraint;
+    			// no results object means no filtering, including before the first load
+    			showVenues(results.values != null ? (List<Venue>) results.values : mAllVenues);
+    		}
+    	}
     }
     
+    /**
+     * Views of a venue list row, kept in the row's tag.
+     */
+    static class VenueViewHolder {
+    	TextView name;
+    	TextView address;
+    	Venue venue; // venue currently shown
+    }
+
     private VenueAdapter mAdapter;
     
     /**
@@ -134,14 +255,92 @@ public class ItemListFragment extends ListFragment implements LoaderManager.Load
         // Create an empty adapter we will use to display the loaded data.
         mAdapter = new VenueAdapter(getActivity());
         setListAdapter(mAdapter);
+
+        // type to filter the list through the venue search index
+        getListView().setTextFilterEnabled(true);
+
+        // download images of rows near the screen before they are opened
+        mImagePrefetcher = ImagePrefetcher.getInstance(getActivity());
+        getListView().setOnScrollListener(this);
  
         // Start out with a progress indicator.
         setListShown(false);
 
         // Prepare the loader.  Either re-connect with an existing one,
         // or start a new one.
-        getLoaderManager().initLoader(0, null, this);
+        VenueLoader loader = (VenueLoader) getLoaderManager().initLoader(0, null, this);
+        loader.setOnVenueBatchListener(this);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
 
+        if (mImagePrefetcher != null) {
+            mImagePrefetcher.cancelAll();
+        }
+        mPrefetchFirst = mPrefetchLast = ListView.INVALID_POSITION;
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        // called every frame while scrolling, only act when rows come or go
+        // or the list contents change
+        int lastVisibleItem = firstVisibleItem + visibleItemCount - 1;
+        if (visibleItemCount == 0 || (firstVisibleItem == mPrefetchFirst
+                && lastVisibleItem == mPrefetchLast && totalItemCount == mPrefetchTotal)) {
+            return;
+        }
+        if (firstVisibleItem != mPrefetchFirst && mPrefetchFirst != ListView.INVALID_POSITION) {
+            mScrollingUp = firstVisibleItem < mPrefetchFirst;
+        }
+        mPrefetchFirst = firstVisibleItem;
+        mPrefetchLast = lastVisibleItem;
+        mPrefetchTotal = totalItemCount;
+        updatePrefetchWindow(totalItemCount);
+    }
+
+    /**
+     * Queue images of the visible rows, then rows in the direction of the
+     * scroll, then a few the other way.
+     */
+    private void updatePrefetchWindow(int totalItemCount) {
+        int count = Math.min(totalItemCount, mAdapter.getCount());
+        int ahead = mScrollingUp ? -1 : 1;
+        List<String> urls = new ArrayList<String>();
+        for (int position = mPrefetchFirst; position <= mPrefetchLast; position++) {
+            addImageUrl(urls, position, count);
+        }
+        int front = ahead > 0 ? mPrefetchLast : mPrefetchFirst;
+        int back = ahead > 0 ? mPrefetchFirst : mPrefetchLast;
+        for (int i = 1; i <= PREFETCH_AHEAD; i++) {
+            addImageUrl(urls, front + i * ahead, count);
+        }
+        for (int i = 1; i <= PREFETCH_BEHIND; i++) {
+            addImageUrl(urls, back - i * ahead, count);
+        }
+        mImagePrefetcher.setWindow(urls);
+    }
+
+    private void addImageUrl(List<String> urls, int position, int count) {
+        if (position >= 0 && position < count) {
+            urls.add(mAdapter.getItem(position).getImageUrl());
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        // a retained loader must not hold on to this fragment
+        Loader<List<Venue>> loader = getLoaderManager().getLoader(0);
+        if (loader != null) {
+            ((VenueLoader) loader).setOnVenueBatchListener(null);
+        }
     }
 
     @Override
@@ -221,9 +420,28 @@ public class ItemListFragment extends ListFragment implements LoaderManager.Load
         return new VenueLoader(getActivity());
     }
 
+    @Override
+    public void onVenueBatch(List<Venue> batch, int load) {
+        // Show venues as they are parsed, the full list replaces them when loaded.
+        // A restarted load streams from the start again, drop what the
+        // canceled one left behind.
+        if (load != mBatchLoad) {
+            mBatchLoad = load;
+            mAdapter.setData(null);
+        }
+        mAdapter.addVenues(batch);
+
+        if (isResumed()) {
+            setListShown(true);
+        } else {
+            setListShownNoAnimation(true);
+        }
+    }
+
     @Override 
     public void onLoadFinished(Loader<List<Venue>> loader, List<Venue> data) {
-        // Set the new data in the adapter.
+        // Set the new data in the adapter.  After a refresh unchanged venues
+        // are the same instances, so their rows are not rebound.
         mAdapter.setData(data);
 
         // The list should now be shown.
@@ -0,0 +1,40 @@
+package com.rogerang.phunwaresample;
+
+import android.annotation.TargetApi;
+import android.app.Application;
+import android.os.Build;
+import android.os.Trace;
+
+import com.rogerang.phunwaresample.content.Metrics;
+
+/**
+ * Application set up that has to happen before any activity starts.
+ */
+public class PhunwareSampleApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // show timed loading stages as systrace sections where supported
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Metrics.setTracer(new SystemTracer());
+        }
+    }
+
+    /**
+     * Reports timed stages to {@link Trace}, JELLY_BEAN_MR2 and up.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static class SystemTracer implements Metrics.Tracer {
+        @Override
+        public void beginSection(String name) {
+            Trace.beginSection(name);
+        }
+
+        @Override
+        public void endSection() {
+            Trace.endSection();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+/**
+ * Pool of unused bitmaps for decoding into with
+ * {@link BitmapFactory.Options#inBitmap}, so moving between images doesn't
+ * allocate and collect a large bitmap each time.
+ *
+ * Bitmaps are bucketed by size.  From KitKat a decode can reuse any bitmap
+ * with enough bytes, before that only one with exactly the decoded size and
+ * no subsampling or scaling.  The pool is bounded by total bytes, least recently added
+ * first out.  Safe to use from any thread.
+ */
+public class BitmapPool {
+	// a reused bitmap may be at most this many times larger than needed
+	private static final int MAX_OVERSIZE = 2;
+
+	private final long mMaxBytes;
+	private long mBytes;
+
+	// bucket key to bitmaps, and all bitmaps oldest first for eviction
+	private final Map<String, LinkedList<Bitmap>> mBuckets = new HashMap<String, LinkedList<Bitmap>>();
+	private final LinkedHashMap<Bitmap, String> mOrder = new LinkedHashMap<Bitmap, String>();
+
+	private int mHitCount;
+	private int mMissCount;
+	private int mPutCount;
+	private int mEvictionCount;
+
+	/**
+	 * New bitmap pool.
+	 * @param maxBytes most bytes of bitmaps to hold
+	 */
+	public BitmapPool(long maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Set up decode options to reuse a pooled bitmap, if one fits.  Call
+	 * after the bounds decode, with inSampleSize set.  If the decode fails
+	 * with an IllegalArgumentException the bitmap did not fit after all;
+	 * clear inBitmap and decode again.
+	 * @param options options with outWidth, outHeight and inSampleSize set
+	 */
+	public void addInBitmap(BitmapFactory.Options options) {
+		options.inMutable = true;
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return;
+		}
+
+		Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig
+				: Bitmap.Config.ARGB_8888;
+		int sampleSize = Math.max(options.inSampleSize, 1);
+		boolean scaled = options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0
+				&& options.inDensity != options.inTargetDensity;
+		Bitmap bitmap;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			long width = (options.outWidth + sampleSize - 1) / sampleSize;
+			long height = (options.outHeight + sampleSize - 1) / sampleSize;
+			if (scaled) {
+				width = (width * options.inTargetDensity + options.inDensity - 1) / options.inDensity;
+				height = (height * options.inTargetDensity + options.inDensity - 1) / options.inDensity;
+			}
+			bitmap = getAtLeast(width * height * bytesPerPixel(config));
+		} else if (sampleSize == 1 && !scaled) {
+			bitmap = getExact(options.outWidth, options.outHeight, config);
+		} else {
+			// subsampled or scaled decodes can't reuse bitmaps before KitKat
+			bitmap = take(null);
+		}
+		options.inBitmap = bitmap;
+	}
+
+	/**
+	 * Give an unused bitmap to the pool.  Nothing may draw it afterwards.
+	 * @param bitmap mutable bitmap, others are ignored
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || mOrder.containsKey(bitmap)) {
+			return;
+		}
+		long size = byteCount(bitmap);
+		if (size > mMaxBytes) {
+			return;
+		}
+
+		String key = bucketKey(bitmap);
+		LinkedList<Bitmap> bucket = mBuckets.get(key);
+		if (bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			mBuckets.put(key, bucket);
+		}
+		bucket.addLast(bitmap);
+		mOrder.put(bitmap, key);
+		mBytes += size;
+		mPutCount++;
+
+		trimToSize(mMaxBytes);
+	}
+
+	/**
+	 * Drop pooled bitmaps until at most maxBytes are held.
+	 * @param maxBytes
+	 */
+	public synchronized void trimToSize(long maxBytes) {
+		Iterator<Map.Entry<Bitmap, String>> it = mOrder.entrySet().iterator();
+		while (mBytes > maxBytes && it.hasNext()) {
+			Map.Entry<Bitmap, String> entry = it.next();
+			it.remove();
+			removeFromBucket(entry.getValue(), entry.getKey());
+			mEvictionCount++;
+		}
+	}
+
+	/**
+	 * Take a bitmap of exactly a size, for decodes before KitKat.
+	 */
+	private synchronized Bitmap getExact(int width, int height, Bitmap.Config config) {
+		return take(width + "x" + height + ":" + config);
+	}
+
+	/**
+	 * Take the smallest bitmap with at least a number of bytes, for KitKat
+	 * and later.  Buckets there are keyed by allocation size.
+	 */
+	private synchronized Bitmap getAtLeast(long bytes) {
+		String bestKey = null;
+		long bestSize = Long.MAX_VALUE;
+		for (String key : mBuckets.keySet()) {
+			long size = Long.parseLong(key);
+			if (size >= bytes && size <= bytes * MAX_OVERSIZE && size < bestSize) {
+				bestKey = key;
+				bestSize = size;
+			}
+		}
+		return take(bestKey);
+	}
+
+	private synchronized Bitmap take(String key) {
+		LinkedList<Bitmap> bucket = key != null ? mBuckets.get(key) : null;
+		if (bucket == null || bucket.isEmpty()) {
+			mMissCount++;
+			return null;
+		}
+
+		// most recently added, least likely to have been paged out
+		Bitmap bitmap = bucket.removeLast();
+		if (bucket.isEmpty()) {
+			mBuckets.remove(key);
+		}
+		mOrder.remove(bitmap);
+		mBytes -= byteCount(bitmap);
+		mHitCount++;
+		return bitmap;
+	}
+
+	private void removeFromBucket(String key, Bitmap bitmap) {
+		LinkedList<Bitmap> bucket = mBuckets.get(key);
+		if (bucket != null) {
+			bucket.remove(bitmap);
+			if (bucket.isEmpty()) {
+				mBuckets.remove(key);
+			}
+		}
+		mBytes -= byteCount(bitmap);
+	}
+
+	private static String bucketKey(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return String.valueOf(byteCount(bitmap));
+		}
+		return bitmap.getWidth() + "x" + bitmap.getHeight() + ":" + bitmap.getConfig();
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private static long byteCount(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount();
+		}
+		return (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private static int bytesPerPixel(Bitmap.Config config) {
+		switch (config) {
+		case ALPHA_8:
+			return 1;
+		case RGB_565:
+		case ARGB_4444:
+			return 2;
+		default:
+			return 4;
+		}
+	}
+
+	/**
+	 * @return bytes of bitmaps held
+	 */
+	public synchronized long size() {
+		return mBytes;
+	}
+
+	/**
+	 * @return number of decodes that found a bitmap to reuse
+	 */
+	public synchronized int hitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * @return number of decodes that had to allocate
+	 */
+	public synchronized int missCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * @return number of bitmaps given to the pool
+	 */
+	public synchronized int putCount() {
+		return mPutCount;
+	}
+
+	/**
+	 * @return number of bitmaps dropped to stay within the size limit
+	 */
+	public synchronized int evictionCount() {
+		return mEvictionCount;
+	}
+
+	/**
+	 * @return fraction of decodes that reused a bitmap, 0 before any decode
+	 */
+	public synchronized float hitRate() {
+		int requests = mHitCount + mMissCount;
+		return requests != 0 ? (float) mHitCount / requests : 0f;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("BitmapPool[bytes=%d/%d,hits=%d,misses=%d,puts=%d,evictions=%d,hitRate=%d%%]",
+				mBytes, mMaxBytes, mHitCount, mMissCount, mPutCount, mEvictionCount, (int) (hitRate() * 100));
+	}
+}
@@ -0,0 +1,87 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Growable byte buffer holding one encoded image, reused per thread so
+ * repeat loads don't reallocate.  BitmapFactory decodes straight from
+ * {@link #getBytes()}.
+ */
+class ImageBuffer extends ByteArrayOutputStream {
+	private static final int INITIAL_SIZE = 64 * 1024;
+	private static final int MAX_RETAINED_SIZE = 2 * 1024 * 1024; // don't keep huge buffers around
+
+	private static final ThreadLocal<ImageBuffer> sBuffers = new ThreadLocal<ImageBuffer>();
+
+	/**
+	 * Get the empty buffer for the current thread.
+	 * @return buffer, must be released with {@link #release()}
+	 */
+	static ImageBuffer obtain() {
+		ImageBuffer buffer = sBuffers.get();
+		if (buffer == null) {
+			buffer = new ImageBuffer();
+			sBuffers.set(buffer);
+		}
+		buffer.reset();
+		return buffer;
+	}
+
+	private ImageBuffer() {
+		super(INITIAL_SIZE);
+	}
+
+	/**
+	 * Drop the buffer from the thread if it grew too large to keep.
+	 */
+	void release() {
+		reset();
+		if (buf.length > MAX_RETAINED_SIZE) {
+			sBuffers.remove();
+		}
+	}
+
+	/**
+	 * Read a stream to the end into this buffer.
+	 * @param is stream to read, not closed
+	 * @param expectedLength length hint, -1 if unknown.  Only presizes the
+	 * buffer up to a limit.
+	 * @param cancellation checked between reads, may be null
+	 * @throws LoadCanceledException if canceled, the buffer holds part of the stream
+	 * @throws IOException
+	 */
+	void readFrom(InputStream is, int expectedLength, CancellationToken cancellation) throws IOException {
+		// the hint comes from the server, so never trust it past what we'd
+		// keep anyway, the loop grows the buffer if the body really is larger
+		int presize = Math.min(expectedLength, MAX_RETAINED_SIZE);
+		if (presize > buf.length - count) {
+			byte[] newBuf = new byte[count + presize];
+			System.arraycopy(buf, 0, newBuf, 0, count);
+			buf = newBuf;
+		}
+
+		int read;
+		while (true) {
+			CancellationToken.throwIfCanceled(cancellation);
+			if (count == buf.length) {
+				byte[] newBuf = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, newBuf, 0, count);
+				buf = newBuf;
+			}
+			read = is.read(buf, count, buf.length - count);
+			if (read == -1) {
+				break;
+			}
+			count += read;
+		}
+	}
+
+	/**
+	 * @return backing array, valid up to {@link #size()}
+	 */
+	byte[] getBytes() {
+		return buf;
+	}
+}
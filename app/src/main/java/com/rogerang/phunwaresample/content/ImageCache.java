@@ -0,0 +1,301 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * Two level image cache shared by all {@link VenueImageLoader}s.
+ *
+ * Decoded bitmaps are kept in a memory cache bounded by byte size, the
+ * downloaded originals are kept on disk under a name derived from the URL.
+ *
+ * Bitmaps handed out with {@link #acquireBitmap(String)} are counted until
+ * given back with {@link #releaseBitmap(Bitmap)}.  A bitmap that is out of
+ * the memory cache and no longer used goes to the {@link BitmapPool} to be
+ * decoded into again.
+ */
+public class ImageCache {
+	private static final String DISK_CACHE_DIR = "images";
+	private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024; // 10MB
+
+	private static final Metrics.Counter MEMORY_HITS = Metrics.counter("image.memoryHits");
+	private static final Metrics.Counter MEMORY_MISSES = Metrics.counter("image.memoryMisses");
+
+	private static ImageCache sInstance;
+
+	private final LruCache<String, Bitmap> mMemoryCache;
+	private final BitmapPool mBitmapPool;
+
+	// use counts of acquired bitmaps, and bitmaps in the memory cache, guarded by this
+	private final Map<Bitmap, Integer> mUseCounts = new IdentityHashMap<Bitmap, Integer>();
+	private final Set<Bitmap> mCached = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+	private final File mDiskCacheDir;
+
+	/**
+	 * Get the shared image cache.
+	 * @param context
+	 * @return image cache
+	 */
+	public static synchronized ImageCache getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new ImageCache(context.getApplicationContext());
+		}
+		return sInstance;
+	}
+
+	private ImageCache(Context context) {
+		// use 1/8th of the available memory for decoded bitmaps
+		int maxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+		mMemoryCache = new LruCache<String, Bitmap>(maxSize) {
+			@Override
+			protected int sizeOf(String key, Bitmap bitmap) {
+				return bitmap.getRowBytes() * bitmap.getHeight();
+			}
+
+			@Override
+			protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+				if (oldValue != newValue) {
+					removed(oldValue);
+				}
+			}
+		};
+
+		// another 1/16th for bitmaps waiting to be reused
+		mBitmapPool = new BitmapPool(maxSize / 2);
+
+		mDiskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+		mDiskCacheDir.mkdirs();
+	}
+
+	/**
+	 * Key for a decoded bitmap.  The same URL may be decoded at different sizes.
+	 * @param url image URL
+	 * @param width requested width
+	 * @param height requested height
+	 * @return memory cache key
+	 */
+	public static String getBitmapKey(String url, int width, int height) {
+		return url + "#" + width + "x" + height;
+	}
+
+	/**
+	 * Get a decoded bitmap from memory and count it as in use.  Counts a
+	 * memory hit or miss, call once per image request.
+	 * @param key key from {@link #getBitmapKey(String, int, int)}
+	 * @return bitmap, or null if not cached.  Give it back with
+	 * {@link #releaseBitmap(Bitmap)} when it is no longer drawn.
+	 */
+	public synchronized Bitmap acquireBitmap(String key) {
+		Bitmap bitmap = acquireBitmapAgain(key);
+		if (bitmap != null) {
+			MEMORY_HITS.increment();
+		} else {
+			MEMORY_MISSES.increment();
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Same as {@link #acquireBitmap(String)} without counting a hit or miss,
+	 * for checking again in a request whose first lookup was counted.
+	 * @param key key from {@link #getBitmapKey(String, int, int)}
+	 * @return bitmap, or null if not cached
+	 */
+	public synchronized Bitmap acquireBitmapAgain(String key) {
+		Bitmap bitmap = mMemoryCache.get(key);
+		if (bitmap != null) {
+			retain(bitmap);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Add a decoded bitmap to memory and count it as in use, as if it was
+	 * acquired.
+	 * @param key key from {@link #getBitmapKey(String, int, int)}
+	 * @param bitmap
+	 */
+	public synchronized void putAcquiredBitmap(String key, Bitmap bitmap) {
+		if (bitmap != null) {
+			// counted first, so an immediate eviction doesn't pool it
+			retain(bitmap);
+			if (key != null) {
+				mCached.add(bitmap);
+				mMemoryCache.put(key, bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Give back a bitmap from {@link #acquireBitmap(String)} or
+	 * {@link #putAcquiredBitmap(String, Bitmap)}.
+	 * @param bitmap
+	 */
+	public synchronized void releaseBitmap(Bitmap bitmap) {
+		Integer count = mUseCounts.get(bitmap);
+		if (count == null) {
+			return;
+		}
+		if (count > 1) {
+			mUseCounts.put(bitmap, count - 1);
+		} else {
+			mUseCounts.remove(bitmap);
+			if (!mCached.contains(bitmap)) {
+				mBitmapPool.put(bitmap);
+			}
+		}
+	}
+
+	/**
+	 * @return pool of unused bitmaps for decoding into
+	 */
+	public BitmapPool getBitmapPool() {
+		return mBitmapPool;
+	}
+
+	private void retain(Bitmap bitmap) {
+		Integer count = mUseCounts.get(bitmap);
+		mUseCounts.put(bitmap, count != null ? count + 1 : 1);
+	}
+
+	/**
+	 * A bitmap left the memory cache, pool it unless still in use.
+	 */
+	private synchronized void removed(Bitmap bitmap) {
+		mCached.remove(bitmap);
+		if (!mUseCounts.containsKey(bitmap)) {
+			mBitmapPool.put(bitmap);
+		}
+	}
+
+	/**
+	 * Disk cache file for the original image downloaded from a URL.
+	 * The file may not exist yet.
+	 * @param url image URL
+	 * @return cache file
+	 */
+	public File getDiskFile(String url) {
+		return new File(mDiskCacheDir, hashKey(url));
+	}
+
+	/**
+	 * Check if the original image for a URL is on disk.  Touches the file so
+	 * recently used images are trimmed last.
+	 * @param url image URL
+	 * @return cache file, or null if not cached
+	 */
+	public File getCachedDiskFile(String url) {
+		File file = getDiskFile(url);
+		if (file.isFile() && file.length() > 0) {
+			file.setLastModified(System.currentTimeMillis());
+			return file;
+		}
+		return null;
+	}
+
+	/**
+	 * Write a downloaded original to the disk cache.  The data goes to a
+	 * uniquely named temp file first and is renamed into place, so concurrent
+	 * writers and readers never see a partial file.  Failure only costs a
+	 * download next time, so it is not passed on.
+	 * @param url image URL
+	 * @param buffer downloaded image
+	 */
+	void putDiskFile(String url, ImageBuffer buffer) {
+		File tempFile = null;
+		FileOutputStream fos = null;
+		try {
+			tempFile = File.createTempFile("dl_" + hashKey(url), ".tmp", mDiskCacheDir);
+			fos = new FileOutputStream(tempFile);
+			buffer.writeTo(fos);
+			fos.close();
+			fos = null;
+
+			if (tempFile.renameTo(getDiskFile(url))) {
+				tempFile = null;
+			}
+			trimDiskCache();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				if (fos != null)
+					fos.close();
+			} catch (IOException squish) {
+				squish.printStackTrace();
+			}
+			if (tempFile != null)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Remove least recently used originals until the disk cache fits its budget.
+	 */
+	public synchronized void trimDiskCache() {
+		File[] files = mDiskCacheDir.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		long total = 0;
+		for (File file : files) {
+			total += file.length();
+		}
+		if (total <= DISK_CACHE_SIZE) {
+			return;
+		}
+
+		// oldest first
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long l = lhs.lastModified();
+				long r = rhs.lastModified();
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < files.length && total > DISK_CACHE_SIZE; i++) {
+			long length = files[i].length();
+			if (files[i].delete()) {
+				total -= length;
+			}
+		}
+	}
+
+	/**
+	 * Hash URL to a file name safe string.
+	 * @param url
+	 * @return hex MD5 of URL
+	 */
+	private static String hashKey(String url) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] hash = digest.digest(url.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return String.valueOf(url.hashCode());
+		} catch (UnsupportedEncodingException e) {
+			return String.valueOf(url.hashCode());
+		}
+	}
+}
@@ -0,0 +1,499 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Downloads and decodes venue images through the {@link ImageCache}.
+ *
+ * Safe to call from any number of threads.  Concurrent requests for the same
+ * image share a single download and decode.  The work itself runs on the
+ * {@link LoadExecutors} network and decode executors, images being shown
+ * ahead of prefetches.
+ */
+public class ImageFetcher {
+	private static final Metrics.Timer DOWNLOAD_TIMER = Metrics.timer("image.download");
+	private static final Metrics.Timer DISK_READ_TIMER = Metrics.timer("image.diskRead");
+	private static final Metrics.Timer DECODE_BOUNDS_TIMER = Metrics.timer("image.decodeBounds");
+	private static final Metrics.Timer DECODE_TIMER = Metrics.timer("image.decode");
+	private static final Metrics.Counter BYTES_DOWNLOADED = Metrics.counter("image.bytesDownloaded");
+	private static final Metrics.Counter BYTES_READ = Metrics.counter("image.bytesRead");
+	private static final Metrics.Counter DISK_HITS = Metrics.counter("image.diskHits");
+	private static final Metrics.Counter DISK_MISSES = Metrics.counter("image.diskMisses");
+
+	// a stalled server must not hold a network thread indefinitely
+	private static final int CONNECT_TIMEOUT_MS = 15000;
+	private static final int READ_TIMEOUT_MS = 30000;
+
+	private static ImageFetcher sInstance;
+
+	private final ImageCache mImageCache;
+
+	// loads in progress by bitmap key
+	private final ConcurrentHashMap<String, FutureTask<Bitmap>> mInFlight =
+			new ConcurrentHashMap<String, FutureTask<Bitmap>>();
+
+	// downloads to the disk cache in progress by URL
+	private final ConcurrentHashMap<String, Download> mDownloads =
+			new ConcurrentHashMap<String, Download>();
+
+	/**
+	 * Get the shared image fetcher.
+	 * @param context
+	 * @return image fetcher
+	 */
+	public static synchronized ImageFetcher getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new ImageFetcher(ImageCache.getInstance(context));
+		}
+		return sInstance;
+	}
+
+	private ImageFetcher(ImageCache imageCache) {
+		mImageCache = imageCache;
+	}
+
+	/**
+	 * Get a decoded image, from memory, disk or network.  Blocks until done,
+	 * call from a background thread.
+	 * @param url URL to download image from
+	 * @param reqWidth requested width of final bitmap
+	 * @param reqHeight requested height of final bitmap
+	 * @return bitmap, or null if the image could not be decoded.  Acquired
+	 * from the {@link ImageCache}, release it when no longer drawn.
+	 * @throws IOException
+	 */
+	public Bitmap getBitmap(String url, int reqWidth, int reqHeight) throws IOException {
+		return getBitmap(url, reqWidth, reqHeight, null);
+	}
+
+	/**
+	 * Get a decoded image, from memory, disk or network, stopping early if
+	 * canceled.  Blocks until done, call from a background thread.  Memory
+	 * lookups here are not counted, callers check
+	 * {@link ImageCache#acquireBitmap(String)} first.
+	 * @param url URL to download image from
+	 * @param reqWidth requested width of final bitmap
+	 * @param reqHeight requested height of final bitmap
+	 * @param cancellation cancellation for this request, or null
+	 * @return bitmap, or null if the image could not be decoded.  Acquired
+	 * from the {@link ImageCache}, release it when no longer drawn.
+	 * @throws LoadCanceledException if canceled
+	 * @throws IOException
+	 */
+	public Bitmap getBitmap(final String url, final int reqWidth, final int reqHeight,
+			final CancellationToken cancellation) throws IOException {
+		final String key = ImageCache.getBitmapKey(url, reqWidth, reqHeight);
+		while (true) {
+			CancellationToken.throwIfCanceled(cancellation);
+			Bitmap bitmap = mImageCache.acquireBitmapAgain(key);
+			if (bitmap != null) {
+				return bitmap;
+			}
+
+			FutureTask<Bitmap> task = new FutureTask<Bitmap>(new Callable<Bitmap>() {
+				@Override
+				public Bitmap call() throws IOException {
+					Bitmap bitmap = loadBitmap(url, reqWidth, reqHeight, cancellation);
+					// acquired on behalf of the thread running this task
+					mImageCache.putAcquiredBitmap(key, bitmap);
+					return bitmap;
+				}
+			});
+
+			// run our own load, or join one already in progress
+			FutureTask<Bitmap> inFlight = mInFlight.putIfAbsent(key, task);
+			if (inFlight == null) {
+				try {
+					task.run();
+				} finally {
+					mInFlight.remove(key, task);
+				}
+				return getResult(task, url);
+			}
+
+			// take our own reference from the cache, going round again if it
+			// was already evicted
+			try {
+				if (getResult(inFlight, url) == null) {
+					return null;
+				}
+			} catch (LoadCanceledException e) {
+				// the load we joined was canceled by its own caller, not by us,
+				// go round and run one ourselves
+			}
+		}
+	}
+
+	/**
+	 * Make sure an image is in the disk cache, without decoding it.  Runs
+	 * behind images being shown.  Blocks until done, call from a background
+	 * thread.
+	 * @param url URL to download image from
+	 * @return cache file, missing only if the disk cache could not write it
+	 * @throws IOException
+	 */
+	public File download(final String url) throws IOException {
+		File cacheFile = mImageCache.getCachedDiskFile(url);
+		if (cacheFile != null) {
+			return cacheFile;
+		}
+
+		final AtomicBoolean started = new AtomicBoolean();
+		Download task = new Download(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				return LoadExecutors.network().invoke(new Callable<File>() {
+					@Override
+					public File call() throws IOException {
+						started.set(true);
+						return downloadToDisk(url);
+					}
+				}, LoadExecutors.PRIORITY_BACKGROUND, null);
+			}
+		}, started);
+
+		Download inFlight = mDownloads.putIfAbsent(url, task);
+		if (inFlight == null) {
+			inFlight = task;
+			try {
+				task.run();
+			} finally {
+				mDownloads.remove(url, task);
+			}
+		}
+		return getResult(inFlight, url);
+	}
+
+	private File downloadToDisk(String url) throws IOException {
+		// may have been loaded for display while this waited in the queue
+		File cacheFile = mImageCache.getCachedDiskFile(url);
+		if (cacheFile != null) {
+			return cacheFile;
+		}
+
+		HttpURLConnection urlConnection = null;
+		InputStream inputStream = null;
+		ImageBuffer buffer = ImageBuffer.obtain();
+
+		try {
+			urlConnection = openConnection(url);
+			inputStream = urlConnection.getInputStream();
+			readFromNetwork(buffer, inputStream, urlConnection.getContentLength(), null);
+			mImageCache.putDiskFile(url, buffer);
+			return mImageCache.getDiskFile(url);
+		} finally {
+			try {
+				if (inputStream != null)
+					inputStream.close();
+				if (urlConnection != null)
+					urlConnection.disconnect();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			buffer.release();
+		}
+	}
+
+	private static HttpURLConnection openConnection(String url) throws IOException {
+		HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+		urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+		urlConnection.setReadTimeout(READ_TIMEOUT_MS);
+		return urlConnection;
+	}
+
+	/**
+	 * Read a response body into an empty buffer, timed as a download.
+	 */
+	private static void readFromNetwork(ImageBuffer buffer, InputStream inputStream, int expectedLength,
+			CancellationToken cancellation) throws IOException {
+		long start = DOWNLOAD_TIMER.start();
+		try {
+			buffer.readFrom(inputStream, expectedLength, cancellation);
+		} finally {
+			DOWNLOAD_TIMER.stop(start);
+		}
+		BYTES_DOWNLOADED.add(buffer.size());
+	}
+
+	/**
+	 * Wait for a shared task and unwrap its failure.
+	 */
+	private static <T> T getResult(FutureTask<T> task, String url) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted loading " + url);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Read the encoded image once, from disk cache or network, and decode it.
+	 * Reading runs on the network executor and decoding on the decode
+	 * executor, both ahead of prefetching.
+	 */
+	private Bitmap loadBitmap(final String url, final int reqWidth, final int reqHeight,
+			final CancellationToken cancellation) throws IOException {
+		// this thread's buffer, lent to the executors while we wait on them
+		final ImageBuffer buffer = ImageBuffer.obtain();
+
+		try {
+			// a prefetch already downloading this image saves a second
+			// transfer, one still queued would only hold us up
+			Download download = mDownloads.get(url);
+			if (download != null && download.isStarted()) {
+				try {
+					getResult(download, url);
+				} catch (IOException e) {
+					// try the network ourselves
+				}
+			}
+			CancellationToken.throwIfCanceled(cancellation);
+
+			LoadExecutors.network().invoke(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					readImage(url, buffer, cancellation);
+					return null;
+				}
+			}, LoadExecutors.PRIORITY_FOREGROUND, cancellation);
+
+			return LoadExecutors.decode().invoke(new Callable<Bitmap>() {
+				@Override
+				public Bitmap call() throws LoadCanceledException {
+					return decodeSampledBitmap(buffer.getBytes(), buffer.size(), reqWidth, reqHeight,
+							mImageCache.getBitmapPool(), cancellation);
+				}
+			}, LoadExecutors.PRIORITY_FOREGROUND, cancellation);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	/**
+	 * Read the encoded image into a buffer, from the disk cache if there,
+	 * otherwise from the network and into the disk cache.
+	 */
+	private void readImage(String url, ImageBuffer buffer, CancellationToken cancellation) throws IOException {
+		HttpURLConnection urlConnection = null;
+		InputStream inputStream = null;
+
+		try {
+			File cacheFile = mImageCache.getCachedDiskFile(url);
+			if (cacheFile != null) {
+				DISK_HITS.increment();
+				long start = DISK_READ_TIMER.start();
+				try {
+					inputStream = new FileInputStream(cacheFile);
+					buffer.readFrom(inputStream, (int) cacheFile.length(), cancellation);
+				} finally {
+					DISK_READ_TIMER.stop(start);
+				}
+				BYTES_READ.add(buffer.size());
+			} else {
+				DISK_MISSES.increment();
+				urlConnection = openConnection(url);
+				final HttpURLConnection connection = urlConnection;
+				CancellationToken.setOnCancelListener(cancellation, new Runnable() {
+					@Override
+					public void run() {
+						connection.disconnect();
+					}
+				});
+				inputStream = urlConnection.getInputStream();
+				readFromNetwork(buffer, inputStream, urlConnection.getContentLength(), cancellation);
+				CancellationToken.setOnCancelListener(cancellation, null);
+				// only complete downloads reach the disk cache
+				mImageCache.putDiskFile(url, buffer);
+			}
+		} catch (IOException e) {
+			// a disconnect from cancel() surfaces as some other I/O error
+			CancellationToken.throwIfCanceled(cancellation);
+			throw e;
+		} finally {
+			CancellationToken.setOnCancelListener(cancellation, null);
+			try {
+				if (inputStream != null)
+					inputStream.close();
+				if (urlConnection != null)
+					urlConnection.disconnect();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Calculate sample size needed for bitmap.
+	 * @param options
+	 * @param reqWidth
+	 * @param reqHeight
+	 * @return
+	 */
+	private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+		// Raw height and width of image
+		final int height = options.outHeight;
+		final int width = options.outWidth;
+		int inSampleSize = 1;
+
+		if (height > reqHeight || width > reqWidth) {
+
+			final int halfHeight = height / 2;
+			final int halfWidth = width / 2;
+
+			// Calculate the largest inSampleSize value that is a power of 2 and keeps both
+			// height and width larger than the requested height and width.
+			while ((halfHeight / inSampleSize) > reqHeight
+					&& (halfWidth / inSampleSize) > reqWidth) {
+				inSampleSize *= 2;
+			}
+		}
+
+		return inSampleSize;
+	}
+
+	/**
+	 * Have the decoder scale the subsampled image the rest of the way down to
+	 * fit the requested size, in the same pass, through density scaling.  The
+	 * densities are pixel sizes, not screen densities, so the decoded bitmap's
+	 * density has to be reset before it is drawn.
+	 * @param options options with outWidth, outHeight and inSampleSize set
+	 * @param reqWidth
+	 * @param reqHeight
+	 */
+	private static void setTargetSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+		int sampledWidth = options.outWidth / options.inSampleSize;
+		int sampledHeight = options.outHeight / options.inSampleSize;
+		if (reqWidth <= 0 || reqHeight <= 0 || sampledWidth <= 0 || sampledHeight <= 0
+				|| (sampledWidth <= reqWidth && sampledHeight <= reqHeight)) {
+			// never scaled up
+			return;
+		}
+
+		// the tighter dimension decides the scale, target / density
+		if ((long) reqWidth * sampledHeight <= (long) reqHeight * sampledWidth) {
+			options.inDensity = sampledWidth;
+			options.inTargetDensity = reqWidth;
+		} else {
+			options.inDensity = sampledHeight;
+			options.inTargetDensity = reqHeight;
+		}
+		options.inScaled = true;
+	}
+
+	/**
+	 * Decode bitmap from memory.  Decodes a scaled down version, fitting
+	 * within the requested size, if the image is larger than requested.
+	 * @param data encoded image
+	 * @param length length of image in data
+	 * @param reqWidth
+	 * @param reqHeight
+	 * @param bitmapPool unused bitmaps to decode into
+	 * @param cancellation checked between decode passes, and stops the
+	 * sampled decode part way, may be null
+	 * @return bitmap both dimensions will be equal to or less than requested dimensions.
+	 * @throws LoadCanceledException if canceled before a bitmap was decoded
+	 */
+	private static Bitmap decodeSampledBitmap(byte[] data, int length, int reqWidth, int reqHeight,
+			BitmapPool bitmapPool, CancellationToken cancellation) throws LoadCanceledException {
+		// First decode with inJustDecodeBounds=true to check dimensions
+		CancellationToken.throwIfCanceled(cancellation);
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		long start = DECODE_BOUNDS_TIMER.start();
+		try {
+			BitmapFactory.decodeByteArray(data, 0, length, options);
+		} finally {
+			DECODE_BOUNDS_TIMER.stop(start);
+		}
+
+		// Calculate inSampleSize, then the exact scale for what is left
+		options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+		setTargetSize(options, reqWidth, reqHeight);
+
+		// Decode bitmap with inSampleSize set, into an unused bitmap if there is one
+		CancellationToken.throwIfCanceled(cancellation);
+		options.inJustDecodeBounds = false;
+		bitmapPool.addInBitmap(options);
+		CancellationToken.setOnCancelListener(cancellation, new Runnable() {
+			@Override
+			public void run() {
+				options.requestCancelDecode();
+			}
+		});
+		Bitmap bitmap;
+		start = DECODE_TIMER.start();
+		try {
+			bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+		} catch (IllegalArgumentException e) {
+			if (options.inBitmap == null) {
+				throw e;
+			}
+			// a canceled decode into an existing bitmap fails this way too,
+			// don't start over without it
+			bitmapPool.put(options.inBitmap);
+			options.inBitmap = null;
+			CancellationToken.throwIfCanceled(cancellation);
+			// the pooled bitmap didn't fit this image after all
+			bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+		} finally {
+			DECODE_TIMER.stop(start);
+			CancellationToken.setOnCancelListener(cancellation, null);
+		}
+
+		if (bitmap == null && cancellation != null && cancellation.isCanceled()) {
+			// decode stopped part way, the bitmap it was writing is still usable
+			bitmapPool.put(options.inBitmap);
+			throw new LoadCanceledException();
+		}
+		if (bitmap != null) {
+			// the decoder stamps inTargetDensity on the bitmap, and a pooled
+			// bitmap keeps whatever its last decode left.  Either way it must
+			// draw at its pixel size, the scaling is already done.
+			bitmap.setDensity(Bitmap.DENSITY_NONE);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Download to the disk cache, which knows when it left the network queue.
+	 */
+	private static class Download extends FutureTask<File> {
+		private final AtomicBoolean mStarted;
+
+		Download(Callable<File> callable, AtomicBoolean started) {
+			super(callable);
+			mStarted = started;
+		}
+
+		/**
+		 * @return true once the transfer has a network thread
+		 */
+		boolean isStarted() {
+			return mStarted.get();
+		}
+	}
+}
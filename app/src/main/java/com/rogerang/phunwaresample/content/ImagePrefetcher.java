@@ -0,0 +1,145 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+
+/**
+ * Downloads venue images into the disk cache ahead of time, so opening a
+ * venue finds its image already there.
+ *
+ * Callers describe the wanted images with {@link #setWindow(List)} as often
+ * as they like, e.g. on every scroll.  Queued downloads outside the new window
+ * are dropped and the rest are reordered, so a small pool of background
+ * threads always works on the most wanted images first.  The transfers
+ * themselves share the {@link LoadExecutors#network()} executor, queued
+ * behind images being shown.
+ */
+public class ImagePrefetcher {
+	private static final int THREAD_COUNT = 2;
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private static ImagePrefetcher sInstance;
+
+	private final ImageFetcher mImageFetcher;
+	private final ThreadPoolExecutor mExecutor;
+
+	// queued downloads by URL, guarded by this
+	private final Map<String, PrefetchTask> mQueued = new HashMap<String, PrefetchTask>();
+	private long mSequence;
+
+	/**
+	 * Get the shared image prefetcher.
+	 * @param context
+	 * @return image prefetcher
+	 */
+	public static synchronized ImagePrefetcher getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new ImagePrefetcher(ImageFetcher.getInstance(context));
+		}
+		return sInstance;
+	}
+
+	private ImagePrefetcher(ImageFetcher imageFetcher) {
+		mImageFetcher = imageFetcher;
+		mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new LoadExecutors.BackgroundThreadFactory("ImagePrefetcher"));
+		mExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Replace the wanted images.  Images no longer wanted are taken off the
+	 * queue, downloads already running are left to finish.
+	 * @param urls image URLs, most wanted first.  Null entries are skipped.
+	 */
+	public synchronized void setWindow(List<String> urls) {
+		Map<String, Integer> priorities = new HashMap<String, Integer>(urls.size() * 2);
+		for (int i = 0; i < urls.size(); i++) {
+			String url = urls.get(i);
+			if (url != null && !priorities.containsKey(url)) {
+				priorities.put(url, i);
+			}
+		}
+
+		// drop what left the window, and pull the rest out to be requeued
+		// in the new order, a priority queue can't reorder in place
+		for (Iterator<PrefetchTask> it = mQueued.values().iterator(); it.hasNext();) {
+			PrefetchTask task = it.next();
+			mExecutor.remove(task);
+			if (!priorities.containsKey(task.mUrl)) {
+				it.remove();
+			}
+		}
+
+		// in window order, an idle pool runs the first tasks without queueing them
+		for (int i = 0; i < urls.size(); i++) {
+			String url = urls.get(i);
+			if (url == null || priorities.get(url) != i) {
+				continue;
+			}
+			PrefetchTask task = mQueued.get(url);
+			if (task == null) {
+				task = new PrefetchTask(url);
+				mQueued.put(url, task);
+			}
+			task.mPriority = i;
+			task.mSequence = mSequence++;
+			mExecutor.execute(task);
+		}
+	}
+
+	/**
+	 * Drop all queued downloads.
+	 */
+	public void cancelAll() {
+		setWindow(Collections.<String>emptyList());
+	}
+
+	private synchronized boolean start(PrefetchTask task) {
+		// null if the window moved on between leaving the queue and running
+		return mQueued.remove(task.mUrl) == task;
+	}
+
+	/**
+	 * Queued download of one image.  Ordered by position in the window, then
+	 * by age.
+	 */
+	private class PrefetchTask implements Runnable, Comparable<PrefetchTask> {
+		final String mUrl;
+		int mPriority;
+		long mSequence;
+
+		PrefetchTask(String url) {
+			mUrl = url;
+		}
+
+		@Override
+		public void run() {
+			if (!start(this)) {
+				return;
+			}
+			try {
+				mImageFetcher.download(mUrl);
+			} catch (IOException e) {
+				// the detail screen will try again
+				e.printStackTrace();
+			}
+		}
+
+		@Override
+		public int compareTo(PrefetchTask another) {
+			if (mPriority != another.mPriority) {
+				return mPriority < another.mPriority ? -1 : 1;
+			}
+			return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+		}
+	}
+}
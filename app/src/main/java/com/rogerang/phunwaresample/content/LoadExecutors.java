@@ -0,0 +1,96 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+/**
+ * Shared executors for loading work, kept apart so a slow image download
+ * can't hold up a venue refresh and the other way round.  Loaders still run
+ * on the AsyncTask pool but hand their work to these and wait for it.
+ *
+ * Sizes are starting points, tune them with the "executor.*" queue depth
+ * and wait time {@link Metrics}.
+ */
+public final class LoadExecutors {
+	/** Priority for work the user is waiting to see */
+	public static final int PRIORITY_FOREGROUND = 0;
+	/** Priority for work done ahead of time, e.g. prefetching */
+	public static final int PRIORITY_BACKGROUND = 10;
+
+	// one at a time, loads and revalidation share the cache file
+	private static final int FEED_THREADS = 1;
+	// I/O bound, mostly waiting on the network
+	private static final int NETWORK_THREADS = 4;
+	// CPU bound, leave a core for the UI
+	private static final int DECODE_THREADS =
+			Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 3));
+
+	private static final PriorityExecutor sFeedExecutor =
+			new PriorityExecutor("feed", FEED_THREADS, new BackgroundThreadFactory("Feed"));
+	private static final PriorityExecutor sNetworkExecutor =
+			new PriorityExecutor("network", NETWORK_THREADS, new BackgroundThreadFactory("Network"));
+	private static final PriorityExecutor sDecodeExecutor =
+			new PriorityExecutor("decode", DECODE_THREADS, new BackgroundThreadFactory("Decode"));
+	private static final ExecutorService sCancelExecutor =
+			Executors.newSingleThreadExecutor(new BackgroundThreadFactory("Cancel"));
+
+	private LoadExecutors() {
+	}
+
+	/**
+	 * @return executor for venue feed loads and revalidation
+	 */
+	public static PriorityExecutor feed() {
+		return sFeedExecutor;
+	}
+
+	/**
+	 * @return executor for image downloads and disk reads
+	 */
+	public static PriorityExecutor network() {
+		return sNetworkExecutor;
+	}
+
+	/**
+	 * @return executor for image decodes
+	 */
+	public static PriorityExecutor decode() {
+		return sDecodeExecutor;
+	}
+
+	/**
+	 * @return executor for {@link CancellationToken} listeners, which may
+	 * close connections and must stay off the main thread
+	 */
+	public static Executor cancel() {
+		return sCancelExecutor;
+	}
+
+	/**
+	 * Background priority threads, so loading never competes with the UI.
+	 */
+	static class BackgroundThreadFactory implements ThreadFactory {
+		private final String mName;
+		private final AtomicInteger mCount = new AtomicInteger();
+
+		BackgroundThreadFactory(String name) {
+			mName = name;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, mName + " #" + mCount.incrementAndGet());
+		}
+	}
+}
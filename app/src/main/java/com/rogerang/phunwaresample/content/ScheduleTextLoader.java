@@ -0,0 +1,114 @@
+package com.rogerang.phunwaresample.content;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+/**
+ * Loader to format a venue schedule for display.
+ *
+ * Formatting happens once per venue, off the UI thread, and the lines are
+ * kept on the venue with {@link Venue#getScheduleText()} for next time.
+ */
+public class ScheduleTextLoader extends AsyncTaskLoader<List<String>> {
+	private final Venue mVenue;
+	private List<String> mScheduleText;
+
+	/**
+	 * New schedule text loader.
+	 * @param context
+	 * @param venue venue whose schedule to format
+	 */
+	public ScheduleTextLoader(Context context, Venue venue) {
+		super(context);
+		mVenue = venue;
+	}
+
+	@Override
+	public List<String> loadInBackground() {
+		List<String> scheduleText = mVenue.getScheduleText();
+		if (scheduleText == null) {
+			scheduleText = format(mVenue.getSchedule());
+			mVenue.setScheduleText(scheduleText);
+		}
+		return scheduleText;
+	}
+
+	/**
+	 * Format schedule items as "E M/d h:mma to [E M/d ]h:mma", leaving out
+	 * the end date when it is the start date.  Items missing a date are skipped.
+	 * @param schedule schedule items, may be null
+	 * @return display lines, unmodifiable
+	 */
+	public static List<String> format(List<ScheduleItem> schedule) {
+		if (schedule == null || schedule.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("E M/d");
+		SimpleDateFormat timeFormat = new SimpleDateFormat("h:mma");
+		List<String> lines = new ArrayList<String>(schedule.size());
+		StringBuilder line = new StringBuilder();
+		for (ScheduleItem item : schedule) {
+			Date startDate = item.getStartDate();
+			Date endDate = item.getEndDate();
+			if (startDate == null || endDate == null) {
+				continue;
+			}
+
+			String startDateStr = dateFormat.format(startDate);
+			String endDateStr = dateFormat.format(endDate);
+			line.setLength(0);
+			line.append(startDateStr).append(' ').append(timeFormat.format(startDate)).append(" to ");
+			if (!endDateStr.equals(startDateStr)) {
+				line.append(endDateStr).append(' ');
+			}
+			line.append(timeFormat.format(endDate));
+			lines.add(line.toString());
+		}
+		return Collections.unmodifiableList(lines);
+	}
+
+	@Override
+	public void deliverResult(List<String> scheduleText) {
+		mScheduleText = scheduleText;
+
+		if (isStarted()) {
+			super.deliverResult(scheduleText);
+		}
+	}
+
+	@Override
+	protected void onStartLoading() {
+		if (mScheduleText == null) {
+			mScheduleText = mVenue.getScheduleText();
+		}
+		if (mScheduleText != null) {
+			// already formatted, no need for a background pass
+			deliverResult(mScheduleText);
+			return;
+		}
+
+		forceLoad();
+	}
+
+	@Override
+	protected void onStopLoading() {
+		// Attempt to cancel the current load task if possible.
+		cancelLoad();
+	}
+
+	@Override
+	protected void onReset() {
+		super.onReset();
+
+		// Ensure the loader is stopped
+		onStopLoading();
+		mScheduleText = null;
+	}
+}
@@ -1,153 +1,75 @@
 package com.rogerang.phunwaresample.content;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 
 /**
  * Loader to handle getting Venue images
  *
  */
 public class VenueImageLoader extends AsyncTaskLoader<Bitmap> {
-	private Context mContext;
+	private static final Metrics.Timer LOAD_TIMER = Metrics.timer("image.load");
+
 	private String urlStr;
 	private int reqWidth;
 	private int reqHeight;
-	
-	private static final String FILENAME = "dl_bitmap"; // temp. download file name
+	private ImageCache mImageCache;
+	private ImageFetcher mImageFetcher;
+	private String mCacheKey;
+	private Bitmap mBitmap; // current result, acquired from mImageCache
+
+	// cancellation for the scheduled load, isLoadInBackgroundCanceled()
+	// needs API 16
+	private volatile CancellationToken mCancellation;
+	private boolean mForcingLoad; // main thread only
 	
 	/**
 	 * New venue image loader.
 	 * @param context
 	 * @param URL URL to download image from
-	 * @param width requested width of final bitmap
-	 * @param height requested width of final bitmap
+	 * @param width width to fit the bitmap to, usually the measured view width
+	 * @param height height to fit the bitmap to
 	 */
 	public VenueImageLoader(Context context, String URL, int width, int height) {
 		super(context);
-		mContext = context;
 		this.urlStr = URL;
 		this.reqHeight = height;
 		this.reqWidth = width;
+		mImageCache = ImageCache.getInstance(context);
+		mImageFetcher = ImageFetcher.getInstance(context);
+		mCacheKey = ImageCache.getBitmapKey(URL, width, height);
+	}
+
+	/**
+	 * @return true if this loader decodes to the given size
+	 */
+	public boolean isSize(int width, int height) {
+		return reqWidth == width && reqHeight == height;
 	}
 
 	@Override
 	public Bitmap loadInBackground() {	
-		HttpURLConnection urlConnection = null;
-		InputStream inputStream = null;
-		FileOutputStream fos = null;
-
+		CancellationToken cancellation = mCancellation;
+		long start = LOAD_TIMER.start();
 		try {
-			URL mURL = new URL(urlStr);
-			
-			// download to local file 
-			urlConnection= (HttpURLConnection) mURL.openConnection();
-            inputStream = urlConnection.getInputStream();
-            fos = mContext.openFileOutput(FILENAME, Context.MODE_PRIVATE);
-            
-            byte data[] = new byte[4096];
-            int count;
-            while ((count = inputStream.read(data)) != -1) {
-            	fos.write(data, 0, count);
-            }
-            inputStream.close();
-            fos.close();
-		
-			inputStream = mContext.openFileInput(FILENAME);
-		
-			BitmapFactory.Options options = new BitmapFactory.Options();
-			options.inJustDecodeBounds = true;
-			BitmapFactory.decodeStream(inputStream, null, options);
-			int imageHeight = options.outHeight;
-			int imageWidth = options.outWidth;
-			
-			// restart file
-			inputStream.close();
-			inputStream = mContext.openFileInput(FILENAME);
-			if (imageHeight <= reqHeight && imageWidth <= reqWidth) {
-				options.inJustDecodeBounds = false;
-				return BitmapFactory.decodeStream(inputStream, null, options);
-			} else {
-				return decodeSampledBitmap(inputStream);
-			}
-
+			return mImageFetcher.getBitmap(urlStr, reqWidth, reqHeight, cancellation);
+		} catch (LoadCanceledException e) {
+			// dropped by the loader anyway
 		} catch (IOException e) {
 			e.printStackTrace();
-	     } finally {
-             try {
-                 if (inputStream != null) 
-                	 inputStream.close();
-                 if (fos != null) 
-                	 fos.close();
-                 if (urlConnection != null)
-                	 urlConnection.disconnect();
-             } catch (Exception e) {
-            	 e.printStackTrace();
-             }
+		} finally {
+			LOAD_TIMER.stop(start);
 		}
 		return null;
 	}
-	
-	/**
-	 * Calculate sample size needed for bitmap.
-	 * @param options
-	 * @return
-	 */
-	private int calculateInSampleSize(BitmapFactory.Options options) {
-		// Raw height and width of image
-		final int height = options.outHeight;
-		final int width = options.outWidth;
-		int inSampleSize = 1;
-
-		if (height > reqHeight || width > reqWidth) {
-
-			final int halfHeight = height / 2;
-			final int halfWidth = width / 2;
-
-			// Calculate the largest inSampleSize value that is a power of 2 and keeps both
-			// height and width larger than the requested height and width.
-			while ((halfHeight / inSampleSize) > reqHeight
-					&& (halfWidth / inSampleSize) > reqWidth) {
-				inSampleSize *= 2;
-			}
-		}
-
-		return inSampleSize;
-	}
 
 	/**
-	 * Decode bitmap for input stream.  Tries to decode a scaled down version into memory.  
-	 * @param is inputstream for bitmap
-	 * @return bitmap both dimensions will be equal to or less than requested dimensions.
-	 * @throws IOException 
+	 * Deliver a newly acquired bitmap.  The loader keeps one reference to
+	 * its current bitmap and gives back the previous one.
 	 */
-	private Bitmap decodeSampledBitmap(InputStream is) throws IOException {
-		// First decode with inJustDecodeBounds=true to check dimensions
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeStream(is, null, options);
-
-	    // Calculate inSampleSize
-	    options.inSampleSize = calculateInSampleSize(options);
-
-		// restart file
-	    is.close();
-	    is = mContext.openFileInput(FILENAME);
-	    
-	    // Decode bitmap with inSampleSize set
-	    options.inJustDecodeBounds = false;
-	    Bitmap bitmap = BitmapFactory.decodeStream(is, null, options);	     
-	    return bitmap;
-	}
-	
-
 	@Override 
 	public void deliverResult(Bitmap bitmap) {
 		if (isReset()) {
@@ -156,21 +78,38 @@ public class VenueImageLoader extends AsyncTaskLoader<Bitmap> {
 			if (bitmap != null) {
 				onReleaseResources(bitmap);
 			}
+			return;
 		}
-			
+
+		Bitmap oldBitmap = mBitmap;
+		mBitmap = bitmap;
+
 		if (isStarted()) {
 			// If the Loader is currently started, we can immediately
 			// deliver its results.
 			super.deliverResult(bitmap);
 		}
-		
-		// TODO cache image by URL
+
+		if (oldBitmap != null) {
+			onReleaseResources(oldBitmap);
+		}
 	}
 
 	@Override 
 	protected void onStartLoading() {
-		// TODO check if image cached, return it
-		
+		if (mBitmap != null) {
+			// already holding a result, hand it out again
+			super.deliverResult(mBitmap);
+			return;
+		}
+
+		// deliver a decoded image straight from memory if we have one
+		Bitmap bitmap = mImageCache.acquireBitmap(mCacheKey);
+		if (bitmap != null) {
+			deliverResult(bitmap);
+			return;
+		}
+
 		forceLoad();
 	}
 
@@ -180,6 +119,37 @@ public class VenueImageLoader extends AsyncTaskLoader<Bitmap> {
 		cancelLoad();
 	}
 
+	@Override
+	protected void onForceLoad() {
+		// a token per scheduled load, so a cancel before it starts still
+		// reaches it.  Disconnecting can touch the network, so listeners run
+		// off the main thread.
+		CancellationToken previous = mCancellation;
+		mCancellation = new CancellationToken(LoadExecutors.cancel());
+		if (previous != null) {
+			previous.cancel();
+		}
+		// super cancels the previous load through cancelLoad(), which must
+		// leave the new token alone
+		mForcingLoad = true;
+		try {
+			super.onForceLoad();
+		} finally {
+			mForcingLoad = false;
+		}
+	}
+
+	@Override
+	public boolean cancelLoad() {
+		// stop downloading and decoding at the next check instead of
+		// finishing an image nobody will see
+		CancellationToken cancellation = mCancellation;
+		if (cancellation != null && !mForcingLoad) {
+			cancellation.cancel();
+		}
+		return super.cancelLoad();
+	}
+
 
 	@Override
 	public void onCanceled(Bitmap bitmap) {
@@ -193,7 +163,12 @@ public class VenueImageLoader extends AsyncTaskLoader<Bitmap> {
 		super.onReset();
 
 		// Ensure the loader is stopped
-		onStopLoading();		
+		onStopLoading();
+
+		if (mBitmap != null) {
+			onReleaseResources(mBitmap);
+			mBitmap = null;
+		}
 	}
 
 	/**
@@ -201,7 +176,11 @@ public class VenueImageLoader extends AsyncTaskLoader<Bitmap> {
 	 * with an actively loaded data set.
 	 */
 	protected void onReleaseResources(Bitmap bitmap) {
-		if (bitmap != null)
-			bitmap.recycle();
+		// Bitmaps are shared through the ImageCache, so they are not
+		// recycled here.  Once out of the memory cache and unused they
+		// are decoded into again.
+		if (bitmap != null) {
+			mImageCache.releaseBitmap(bitmap);
+		}
 	}
 }
\ No newline at end of file
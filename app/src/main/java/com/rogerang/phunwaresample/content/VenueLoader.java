@@ -2,133 +2,351 @@ package com.rogerang.phunwaresample.content;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
-import android.support.v4.util.LongSparseArray;
-
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
-import com.google.gson.reflect.TypeToken;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * A custom Loader that loads all of the venue data.
+ *
+ * With a cached feed, the first load delivers it straight away and checks
+ * the server afterwards, so the list never waits on the network.  If the
+ * feed changed the loader reloads through {@link #onContentChanged()}.
  */
 public class VenueLoader extends AsyncTaskLoader<List<Venue>> {
-	private List<Venue> mVenues = null; // current data
+	private volatile List<Venue> mVenues = null; // current data
 	private Context mContext;
 
-	private final static String CACHE_FILE = "venue_data";
-	
-	// Since Venue IDs are long, using recommended LongSparseArray
-    public static LongSparseArray<Venue> ITEM_MAP = new LongSparseArray<Venue>();
+	private final static String FEED_URL = "https://s3.amazonaws.com/jon-hancock-phunware/nflapi-static.json";
+	private final static String CACHE_FILE = "venue_data.gz";
+	private final static String LEGACY_CACHE_FILE = "venue_data"; // uncompressed, no longer used
+	private final static String SNAPSHOT_FILE = "venue_data.snapshot";
+
+	private final static VenueParser PARSER = new VenueParser();
+
+	private final static Metrics.Timer LOAD_TIMER = Metrics.timer("venues.load");
+	private final static Metrics.Timer SNAPSHOT_READ_TIMER = Metrics.timer("venues.snapshotRead");
+	private final static Metrics.Timer PARSE_TIMER = Metrics.timer("venues.parse");
+	private final static Metrics.Timer SNAPSHOT_WRITE_TIMER = Metrics.timer("venues.snapshotWrite");
+	private final static Metrics.Timer DIFF_TIMER = Metrics.timer("venues.diff");
+	private final static Metrics.Timer INDEX_TIMER = Metrics.timer("venues.index");
+	private final static Metrics.Counter SNAPSHOT_HITS = Metrics.counter("venues.snapshotHits");
+	private final static Metrics.Counter SNAPSHOT_MISSES = Metrics.counter("venues.snapshotMisses");
+
+    // repository snapshot built in the background for the result about to
+    // be delivered
+    private List<Venue> mSnapshotVenues;
+    private VenueRepository.Snapshot mSnapshot;
+    // result read from the cache without checking the server first
+    private List<Venue> mStaleVenues;
+
+    // set when a revalidation downloaded a new feed, so the reload it
+    // triggers doesn't ask the server again
+    private volatile boolean mFeedValidated;
+    // cancellation for the queued or running revalidation, canceled when a
+    // foreground load is scheduled so it never waits behind one
+    private volatile CancellationToken mRevalidation;
+
+    // cancellation for the scheduled load, isLoadInBackgroundCanceled()
+    // needs API 16
+    private volatile CancellationToken mCancellation;
+    private boolean mForcingLoad; // main thread only
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private volatile OnVenueBatchListener mBatchListener;
+    private int mStreamedLoads; // loads that streamed batches, feed executor only
+
+    /**
+     * Listener for venues parsed before the whole load is complete.
+     */
+    public interface OnVenueBatchListener {
+    	/**
+    	 * Called on the main thread with the next venues in the list, in order.
+    	 * The complete list is still delivered as the loader result.  A load
+    	 * canceled part way is parsed again from the start, and batches
+    	 * can be dropped while the loader is stopped, so a batch of a new
+    	 * load replaces any venues streamed before it.
+    	 * @param batch venues parsed since the last batch
+    	 * @param load number of the load the batch belongs to, changes with
+    	 * each load that streams batches
+    	 */
+    	public void onVenueBatch(List<Venue> batch, int load);
+    }
 
 	public VenueLoader(Context context) {
 		super(context);
 		mContext = context;
 	}	
-    
-    /**
-     * Custom GSON deserializer for Date used in {@link ScheduleItem}.
-     */
-    private class DateDeserializer implements JsonDeserializer<Date> {
-    	private final SimpleDateFormat FORMATTER = new SimpleDateFormat(
-    			"yyyy-MM-dd HH:mm:ss Z");
-    	
-    	public Date deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-    			throws JsonParseException {  		
-    		try {
-				return FORMATTER.parse(json.getAsJsonPrimitive().getAsString());
-			} catch (ParseException e) {
-				e.printStackTrace();
-				throw(new JsonParseException(e));
-			}
-    	}
-    }
 
 	/**
-	 * Load cached venue data.  Check URL and if newer download to cache.
+	 * Set listener for venues parsed during the initial load.
+	 * @param listener listener, or null to stop receiving batches
+	 */
+	public void setOnVenueBatchListener(OnVenueBatchListener listener) {
+		mBatchListener = listener;
+	}
+
+	/**
+	 * Load cached venue data.  Check URL and if newer download to cache,
+	 * except on a first load with a cache, which is revalidated after delivery.
 	 * @return List of venue data.  May be empty list.
 	 */
 	@Override
 	public List<Venue> loadInBackground() {
-		HttpURLConnection urlConnection = null;
-		InputStream inputStream = null;
-		FileOutputStream fileOutputStream = null;
+		final CancellationToken cancellation = mCancellation;
+		try {
+			// on the feed executor, so image work can't hold it up
+			return LoadExecutors.feed().invoke(new Callable<List<Venue>>() {
+				@Override
+				public List<Venue> call() throws LoadCanceledException {
+					long start = LOAD_TIMER.start();
+					try {
+						return load(cancellation);
+					} finally {
+						LOAD_TIMER.stop(start);
+					}
+				}
+			}, LoadExecutors.PRIORITY_FOREGROUND, cancellation);
+		} catch (LoadCanceledException e) {
+			// dropped by the loader anyway
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private List<Venue> load(CancellationToken cancellation) throws LoadCanceledException {
 		List<Venue> newData = null;
-		long currentTime = System.currentTimeMillis();
 
+		VenueFeed feed = newFeed();
+		boolean stale = false;
 		try {
-			File cacheFile = new File(mContext.getCacheDir(), CACHE_FILE);
-			long lastUpdateTime = 0;
-
-			// check for cache data and when last modified
-			if (cacheFile.exists())
-				lastUpdateTime = cacheFile.lastModified();
-
-			URL mURL = new URL("https://s3.amazonaws.com/jon-hancock-phunware/nflapi-static.json");
-			urlConnection= (HttpURLConnection) mURL.openConnection();
-			long lastModified = urlConnection.getHeaderFieldDate("Last-Modified", currentTime);
-
-			if (lastModified > lastUpdateTime) {
-				// download data to cache file
-				inputStream = urlConnection.getInputStream();
-				fileOutputStream = new FileOutputStream(cacheFile);
-
-				byte buffer[] = new byte[4096];
-				int count;
-				while ((count = inputStream.read(buffer)) != -1) {
-					fileOutputStream.write(buffer, 0, count);
+			new VenueFeed(FEED_URL, new File(mContext.getCacheDir(), LEGACY_CACHE_FILE)).delete();
+
+			if (mFeedValidated) {
+				// just downloaded by the revalidation that started this load
+				mFeedValidated = false;
+			} else if (mVenues == null && feed.hasCache()) {
+				// show what we have, the server is checked once it is delivered
+				stale = true;
+			} else {
+				try {
+					feed.refresh(cancellation);
+				} catch (LoadCanceledException e) {
+					throw e;
+				} catch (IOException e) {
+					// carry on with cached data, if any
+					e.printStackTrace();
 				}
-
-				fileOutputStream.close();
-				inputStream.close();
 			}
+			File cacheFile = feed.getCacheFile();
 
-			// load data from file
-			inputStream = new FileInputStream(cacheFile);
-			InputStreamReader reader = new InputStreamReader(inputStream, "UTF-8");
-			Type venueType = new TypeToken<List<Venue>>() {}.getType();            
-			GsonBuilder gsonBuilder = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
-			gsonBuilder.registerTypeAdapter(Date.class, new DateDeserializer());
-			Gson gson = gsonBuilder.create();
-			newData = gson.fromJson(reader, venueType);
+			// a snapshot of an unchanged feed skips JSON parsing altogether
+			File snapshotFile = new File(mContext.getCacheDir(), SNAPSHOT_FILE);
+			long start = SNAPSHOT_READ_TIMER.start();
+			try {
+				newData = VenueSnapshot.read(snapshotFile, cacheFile);
+				if (newData != null) {
+					for (Venue venue : newData) {
+						venue.prepareDisplayText();
+					}
+				}
+			} finally {
+				SNAPSHOT_READ_TIMER.stop(start);
+			}
+			if (newData != null) {
+				SNAPSHOT_HITS.increment();
+			} else {
+				SNAPSHOT_MISSES.increment();
+				start = PARSE_TIMER.start();
+				try {
+					newData = parseFeed(feed, cancellation);
+				} finally {
+					PARSE_TIMER.stop(start);
+				}
+				start = SNAPSHOT_WRITE_TIMER.start();
+				try {
+					VenueSnapshot.write(snapshotFile, cacheFile, newData);
+				} catch (IOException e) {
+					e.printStackTrace();
+				} finally {
+					SNAPSHOT_WRITE_TIMER.stop(start);
+				}
+			}
+		} catch (LoadCanceledException e) {
+			throw e;
 		} catch (Exception e) {
 			e.printStackTrace();
+			if (stale) {
+				// unreadable, make the revalidation download it again
+				feed.delete();
+			}
+		}
+
+		if (newData == null)
+			newData = new ArrayList<Venue>();
+
+		CancellationToken.throwIfCanceled(cancellation);
+
+		// match up with the current list, so unchanged venues keep their
+		// instances and an unchanged feed isn't delivered again
+		List<Venue> oldVenues = mVenues;
+		VenueDiff diff = null;
+		if (oldVenues != null) {
+			long start = DIFF_TIMER.start();
+			try {
+				diff = VenueDiff.compute(oldVenues, newData);
+			} finally {
+				DIFF_TIMER.stop(start);
+			}
+		}
+		if (diff != null) {
+			if (diff.isEmpty()) {
+				// nothing changed, current list and indexes stay as they are
+				return oldVenues;
+			}
+			newData = diff.getNewVenues();
+		}
+
+		CancellationToken.throwIfCanceled(cancellation);
+
+		// build the next repository version here rather than on the main thread
+		VenueRepository.Snapshot snapshot;
+		long start = INDEX_TIMER.start();
+		try {
+			snapshot = new VenueRepository.Snapshot(newData, new VenueSpatialIndex(newData),
+					new VenueSearchIndex(newData), new ScheduleIndex(newData));
+		} finally {
+			INDEX_TIMER.stop(start);
+		}
+		synchronized (this) {
+			mSnapshot = snapshot;
+			mSnapshotVenues = newData;
+			mStaleVenues = stale ? newData : null;
+		}
+
+		// Done!
+		return newData;
+	}
+
+	private VenueFeed newFeed() {
+		return new VenueFeed(FEED_URL, new File(mContext.getCacheDir(), CACHE_FILE));
+	}
+
+	/**
+	 * Check the server for a newer feed in the background, after delivering
+	 * the cached one.  Reloads only if the feed changed.
+	 */
+	private void revalidate() {
+		final VenueFeed feed = newFeed();
+		final CancellationToken cancellation = new CancellationToken(LoadExecutors.cancel());
+		mRevalidation = cancellation;
+		LoadExecutors.feed().submit(new Runnable() {
+			@Override
+			public void run() {
+				boolean changed = false;
+				try {
+					changed = feed.refresh(cancellation);
+				} catch (LoadCanceledException e) {
+					// a foreground load took over, it checks the server itself
+					return;
+				} catch (IOException e) {
+					// keep showing the cached feed
+					e.printStackTrace();
+				}
+				if (!changed) {
+					return;
+				}
+
+				mFeedValidated = true;
+				mHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (!isReset()) {
+							onContentChanged();
+						}
+					}
+				});
+			}
+		}, LoadExecutors.PRIORITY_BACKGROUND);
+	}
+
+	/**
+	 * Parse venue data from the JSON feed.
+	 * @param feed feed with a local copy
+	 * @param cancellation cancellation for this load
+	 * @return all venues in the feed
+	 * @throws IOException
+	 */
+	private List<Venue> parseFeed(VenueFeed feed, CancellationToken cancellation) throws IOException {
+		InputStream inputStream = null;
+
+		try {
+			// straight out of the decompressor into the JSON reader
+			inputStream = feed.openCache();
+			InputStreamReader reader = new InputStreamReader(inputStream, "UTF-8");
+
+			// only stream batches when nothing is showing yet
+			if (mBatchListener == null || mVenues != null) {
+				return PARSER.parse(reader, null, cancellation);
+			}
+			final int load = ++mStreamedLoads;
+			return PARSER.parse(reader, new VenueParser.BatchListener() {
+				private int mPublishedSize;
+
+				@Override
+				public void onBatch(List<Venue> batch, List<Venue> venues) {
+					// a partial snapshot copies everything parsed so far, so only
+					// build one each time the count doubles, keeping the total
+					// linear.  Venues after it are found once the load completes,
+					// the detail view looks them up again then, and indexes come
+					// with the complete result.
+					VenueRepository.Snapshot snapshot = null;
+					if (venues.size() >= mPublishedSize * 2) {
+						snapshot = new VenueRepository.Snapshot(venues, null, null, null);
+						mPublishedSize = venues.size();
+					}
+					postBatch(batch, load, snapshot);
+				}
+			}, cancellation);
 		} finally {
 			try {
 				if (inputStream != null) 
 					inputStream.close();
-				if (urlConnection != null)
-					urlConnection.disconnect();
-				if (fileOutputStream != null)
-					fileOutputStream.close();
 			} catch (Exception squish) {
 				squish.printStackTrace();
 			}
 		}
+	}
 
-		if (newData == null)
-			newData = new ArrayList<Venue>();
+	/**
+	 * Hand a batch of venues to the listener on the main thread.
+	 * @param batch
+	 * @param load number of the load parsing the batch
+	 * @param snapshot venues parsed so far to publish with the batch, or null
+	 */
+	private void postBatch(final List<Venue> batch, final int load, final VenueRepository.Snapshot snapshot) {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				OnVenueBatchListener listener = mBatchListener;
+				if (listener == null || isReset() || !isStarted()) {
+					return;
+				}
 
-		// Done!
-		return newData;
+				if (snapshot != null) {
+					VenueRepository.getInstance().publish(snapshot);
+				}
+				listener.onVenueBatch(batch, load);
+			}
+		});
 	}
 
 	@Override 
@@ -145,11 +363,29 @@ public class VenueLoader extends AsyncTaskLoader<List<Venue>> {
 		List<Venue>  oldVenues = mVenues;
 		mVenues = venues;
 
-		ITEM_MAP.clear();
-		if (mVenues != null) {
-			for (Venue venue : mVenues) {
-				ITEM_MAP.put(venue.getId(), venue);
+		if (venues != oldVenues) {
+			// swap in the version built with this result, readers on other
+			// threads see either all of the old data or all of the new
+			VenueRepository.Snapshot snapshot;
+			synchronized (this) {
+				snapshot = venues != null && venues == mSnapshotVenues ? mSnapshot : null;
+			}
+			if (snapshot == null) {
+				snapshot = venues != null ? new VenueRepository.Snapshot(venues, null, null, null)
+						: VenueRepository.Snapshot.EMPTY;
 			}
+			VenueRepository.getInstance().publish(snapshot);
+		}
+
+		boolean stale;
+		synchronized (this) {
+			stale = venues != null && venues == mStaleVenues;
+			if (stale) {
+				mStaleVenues = null;
+			}
+		}
+		if (stale) {
+			revalidate();
 		}
 
 		if (isStarted()) {
@@ -188,6 +424,46 @@ public class VenueLoader extends AsyncTaskLoader<List<Venue>> {
 		cancelLoad();
 	}
 
+	@Override
+	protected void onForceLoad() {
+		cancelRevalidation();
+
+		// a token per scheduled load, so a cancel before it starts still
+		// reaches it.  Disconnecting can touch the network, so listeners run
+		// off the main thread.
+		CancellationToken previous = mCancellation;
+		mCancellation = new CancellationToken(LoadExecutors.cancel());
+		if (previous != null) {
+			previous.cancel();
+		}
+		// super cancels the previous load through cancelLoad(), which must
+		// leave the new token alone
+		mForcingLoad = true;
+		try {
+			super.onForceLoad();
+		} finally {
+			mForcingLoad = false;
+		}
+	}
+
+	private void cancelRevalidation() {
+		CancellationToken revalidation = mRevalidation;
+		if (revalidation != null) {
+			revalidation.cancel();
+		}
+	}
+
+	@Override
+	public boolean cancelLoad() {
+		// stop the load in progress at its next check instead of letting it
+		// run to the end for a result that will be dropped
+		CancellationToken cancellation = mCancellation;
+		if (cancellation != null && !mForcingLoad) {
+			cancellation.cancel();
+		}
+		return super.cancelLoad();
+	}
+
 
 	@Override
 	public void onCanceled(List<Venue> venues) {
@@ -202,6 +478,7 @@ public class VenueLoader extends AsyncTaskLoader<List<Venue>> {
 
 		// Ensure the loader is stopped
 		onStopLoading();
+		cancelRevalidation();
 
 		if (mVenues != null) {
 			onReleaseResources(mVenues);
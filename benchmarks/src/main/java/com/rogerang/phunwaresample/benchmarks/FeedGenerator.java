@@ -0,0 +1,192 @@
+package com.rogerang.phunwaresample.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.stream.JsonWriter;
+
+import com.rogerang.phunwaresample.content.ScheduleDateFormat;
+import com.rogerang.phunwaresample.content.ScheduleItem;
+import com.rogerang.phunwaresample.content.Venue;
+
+/**
+ * Synthetic venue feed for benchmarks, shaped like the real feed but of any
+ * size.
+ *
+ * Venues get unique, unordered ids, positions spread over the continental
+ * US and an average of scheduleDensity schedule items each (0 to twice that).
+ * The same arguments always give the same feed.
+ */
+public class FeedGenerator {
+	private static final String[] WORDS = { "Stadium", "Arena", "Field", "Park", "Center", "Hall",
+			"Dome", "Plaza", "Pavilion", "Theater", "Club", "Lounge", "Grill", "Tavern", "Bowl" };
+	private static final String[] CITIES = { "Phoenix", "Glendale", "Scottsdale", "Tempe", "Mesa",
+			"Chandler", "Gilbert", "Peoria", "Surprise", "Goodyear" };
+
+	// 2015-01-25 00:00:00 UTC, the week before the game
+	private static final long SCHEDULE_START = 1422144000000L;
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private final int mVenueCount;
+	private final int mScheduleDensity;
+	private final long mSeed;
+
+	/**
+	 * New feed generator.
+	 * @param venueCount number of venues
+	 * @param scheduleDensity average schedule items per venue
+	 * @param seed random seed
+	 */
+	public FeedGenerator(int venueCount, int scheduleDensity, long seed) {
+		mVenueCount = venueCount;
+		mScheduleDensity = scheduleDensity;
+		mSeed = seed;
+	}
+
+	/**
+	 * @return generated venues, as parsing the generated JSON would give
+	 */
+	public List<Venue> venues() {
+		Random random = new Random(mSeed);
+		long[] ids = shuffledIds(random);
+		List<Venue> venues = new ArrayList<Venue>(mVenueCount);
+		for (int i = 0; i < mVenueCount; i++) {
+			venues.add(venue(ids[i], random));
+		}
+		return venues;
+	}
+
+	/**
+	 * Write the feed JSON, one venue at a time.
+	 * @param writer destination, not closed
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException {
+		Random random = new Random(mSeed);
+		long[] ids = shuffledIds(random);
+		JsonWriter out = new JsonWriter(writer);
+		out.beginArray();
+		for (int i = 0; i < mVenueCount; i++) {
+			write(out, venue(ids[i], random));
+		}
+		out.endArray();
+		out.flush();
+	}
+
+	/**
+	 * @return feed JSON as UTF-8
+	 * @throws IOException
+	 */
+	public byte[] toBytes() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(mVenueCount * (400 + mScheduleDensity * 80));
+		Writer writer = new OutputStreamWriter(bytes, "UTF-8");
+		write(writer);
+		writer.flush();
+		return bytes.toByteArray();
+	}
+
+	private long[] shuffledIds(Random random) {
+		long[] ids = new long[mVenueCount];
+		for (int i = 0; i < mVenueCount; i++) {
+			ids[i] = 1000L + i * 7L;
+		}
+		for (int i = mVenueCount - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			long id = ids[i];
+			ids[i] = ids[j];
+			ids[j] = id;
+		}
+		return ids;
+	}
+
+	private Venue venue(long id, Random random) {
+		Venue venue = new Venue();
+		venue.setId(id);
+		venue.setPcode(random.nextInt(100000));
+		venue.setLatitude(25 + random.nextDouble() * 24);
+		venue.setLongitude(-124 + random.nextDouble() * 57);
+
+		String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+		String city = CITIES[random.nextInt(CITIES.length)];
+		venue.setName(name);
+		venue.setAddress((1 + random.nextInt(9999)) + " W " + WORDS[random.nextInt(WORDS.length)] + " Rd");
+		venue.setCity(city);
+		venue.setState("AZ");
+		venue.setZip(String.valueOf(85000 + random.nextInt(1000)));
+		venue.setPhone(phone(random));
+		venue.setTollFreePhone(random.nextInt(4) == 0 ? phone(random) : null);
+		venue.setUrl("http://example.com/venues/" + id);
+		venue.setDescription(name + " in " + city + " hosts events all week.");
+		venue.setTicketLink(random.nextInt(2) == 0 ? "http://example.com/tickets/" + id : null);
+		venue.setImageUrl("http://example.com/images/" + id + ".jpg");
+
+		int count = mScheduleDensity > 0 ? random.nextInt(mScheduleDensity * 2 + 1) : 0;
+		List<ScheduleItem> schedule = new ArrayList<ScheduleItem>(count);
+		for (int i = 0; i < count; i++) {
+			long start = SCHEDULE_START + random.nextInt(7 * 24) * HOUR;
+			schedule.add(new ScheduleItem(start, start + (1 + random.nextInt(6)) * HOUR));
+		}
+		venue.setSchedule(schedule);
+		venue.prepareDisplayText();
+		return venue;
+	}
+
+	private static String phone(Random random) {
+		return String.format("(%03d) %03d-%04d", 200 + random.nextInt(800), random.nextInt(1000),
+				random.nextInt(10000));
+	}
+
+	private static void write(JsonWriter out, Venue venue) throws IOException {
+		out.beginObject();
+		out.name("id").value(venue.getId());
+		out.name("pcode").value(venue.getPcode());
+		out.name("latitude").value(venue.getLatitude());
+		out.name("longitude").value(venue.getLongitude());
+		out.name("name").value(venue.getName());
+		out.name("address").value(venue.getAddress());
+		out.name("city").value(venue.getCity());
+		out.name("state").value(venue.getState());
+		out.name("zip").value(venue.getZip());
+		out.name("phone").value(venue.getPhone());
+		out.name("tollfreephone").value(venue.getTollFreePhone());
+		out.name("url").value(venue.getUrl());
+		out.name("description").value(venue.getDescription());
+		out.name("ticket_link").value(venue.getTicketLink());
+		out.name("image_url").value(venue.getImageUrl());
+		out.name("schedule").beginArray();
+		for (ScheduleItem item : venue.getSchedule()) {
+			out.beginObject();
+			out.name("start_date").value(ScheduleDateFormat.format(item.getStartTime()));
+			out.name("end_date").value(ScheduleDateFormat.format(item.getEndTime()));
+			out.endObject();
+		}
+		out.endArray();
+		out.endObject();
+	}
+
+	/**
+	 * Write a feed file.
+	 * @param args venue count, schedule density, output file
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("usage: FeedGenerator <venues> <schedule density> <output file>");
+			System.exit(1);
+		}
+		FeedGenerator generator = new FeedGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]), 1);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[2]), "UTF-8"));
+		try {
+			generator.write(writer);
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.rogerang.phunwaresample.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.rogerang.phunwaresample.content.ScheduleIndex;
+import com.rogerang.phunwaresample.content.Venue;
+import com.rogerang.phunwaresample.content.VenueRepository;
+import com.rogerang.phunwaresample.content.VenueSearchIndex;
+import com.rogerang.phunwaresample.content.VenueSpatialIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the repository indexes for a freshly loaded venue list, and a
+ * typical query against each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IndexBenchmark {
+	// middle of the generated schedule week
+	private static final long SCHEDULE_TIME = 1422144000000L + 3 * 24 * 60 * 60 * 1000L;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int venues;
+
+	@Param({ "4" })
+	public int scheduleDensity;
+
+	private List<Venue> mVenues;
+	private VenueSpatialIndex mSpatialIndex;
+	private VenueSearchIndex mSearchIndex;
+	private ScheduleIndex mScheduleIndex;
+
+	@Setup
+	public void setUp() {
+		mVenues = new FeedGenerator(venues, scheduleDensity, 1).venues();
+		mSpatialIndex = new VenueSpatialIndex(mVenues);
+		mSearchIndex = new VenueSearchIndex(mVenues);
+		mScheduleIndex = new ScheduleIndex(mVenues);
+	}
+
+	@Benchmark
+	public VenueSpatialIndex buildSpatialIndex() {
+		return new VenueSpatialIndex(mVenues);
+	}
+
+	@Benchmark
+	public VenueSearchIndex buildSearchIndex() {
+		return new VenueSearchIndex(mVenues);
+	}
+
+	@Benchmark
+	public ScheduleIndex buildScheduleIndex() {
+		return new ScheduleIndex(mVenues);
+	}
+
+	@Benchmark
+	public VenueRepository.Snapshot buildSnapshot() {
+		return new VenueRepository.Snapshot(mVenues, new VenueSpatialIndex(mVenues),
+				new VenueSearchIndex(mVenues), new ScheduleIndex(mVenues));
+	}
+
+	@Benchmark
+	public List<Venue> nearest() {
+		return mSpatialIndex.nearest(33.5276, -112.2626, 20);
+	}
+
+	@Benchmark
+	public List<Venue> search() {
+		return mSearchIndex.search("stadium gl");
+	}
+
+	@Benchmark
+	public List<ScheduleIndex.Match> happeningAt() {
+		return mScheduleIndex.happeningAt(SCHEDULE_TIME);
+	}
+}
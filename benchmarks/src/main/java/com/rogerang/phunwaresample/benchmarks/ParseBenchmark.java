@@ -0,0 +1,81 @@
+package com.rogerang.phunwaresample.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.rogerang.phunwaresample.content.Venue;
+import com.rogerang.phunwaresample.content.VenueParser;
+import com.rogerang.phunwaresample.content.VenueSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start ingestion: parsing the JSON feed, against reading the binary
+ * snapshot written from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParseBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	public int venues;
+
+	@Param({ "4" })
+	public int scheduleDensity;
+
+	private final VenueParser mParser = new VenueParser();
+	private byte[] mFeed;
+	private File mFeedFile;
+	private File mSnapshotFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mFeed = new FeedGenerator(venues, scheduleDensity, 1).toBytes();
+
+		mFeedFile = File.createTempFile("feed", ".json");
+		FileOutputStream out = new FileOutputStream(mFeedFile);
+		try {
+			out.write(mFeed);
+		} finally {
+			out.close();
+		}
+		mSnapshotFile = File.createTempFile("feed", ".snapshot");
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, parseJson());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mFeedFile.delete();
+		mSnapshotFile.delete();
+	}
+
+	@Benchmark
+	public List<Venue> parseJson() throws IOException {
+		return mParser.parse(new InputStreamReader(new ByteArrayInputStream(mFeed), "UTF-8"));
+	}
+
+	@Benchmark
+	public List<Venue> readSnapshot() {
+		return VenueSnapshot.read(mSnapshotFile, mFeedFile);
+	}
+}
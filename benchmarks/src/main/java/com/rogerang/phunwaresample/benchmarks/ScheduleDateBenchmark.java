@@ -0,0 +1,82 @@
+package com.rogerang.phunwaresample.benchmarks;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.rogerang.phunwaresample.content.ScheduleDateFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Schedule date parsing and formatting, {@link ScheduleDateFormat} against
+ * the {@link SimpleDateFormat} it replaced.  Times are per date.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScheduleDateBenchmark {
+	private static final int COUNT = 1024;
+
+	private final SimpleDateFormat mSimpleDateFormat = new SimpleDateFormat(ScheduleDateFormat.PATTERN);
+	private final long[] mTimes = new long[COUNT];
+	private final String[] mStrings = new String[COUNT];
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		for (int i = 0; i < COUNT; i++) {
+			// whole seconds through 2015, as in the feed
+			mTimes[i] = (1420070400L + random.nextInt(365 * 24 * 60 * 60)) * 1000;
+			mStrings[i] = ScheduleDateFormat.format(mTimes[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void parse(Blackhole blackhole) throws ParseException {
+		for (String s : mStrings) {
+			blackhole.consume(ScheduleDateFormat.parse(s));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void parseSimpleDateFormat(Blackhole blackhole) throws ParseException {
+		for (String s : mStrings) {
+			blackhole.consume(mSimpleDateFormat.parse(s).getTime());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void format(Blackhole blackhole) {
+		for (long time : mTimes) {
+			blackhole.consume(ScheduleDateFormat.format(time));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void formatSimpleDateFormat(Blackhole blackhole) {
+		for (long time : mTimes) {
+			blackhole.consume(mSimpleDateFormat.format(new Date(time)));
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.rogerang.phunwaresample.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.rogerang.phunwaresample.content.LongVenueMap;
+import com.rogerang.phunwaresample.content.Venue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Venue id lookup, {@link LongVenueMap} against a boxed HashMap and a sorted
+ * array with binary search, which is how android.util.LongSparseArray works
+ * (that class isn't available off Android).  Lookup times are per id.
+ *
+ * The sorted array here is built with one sort, the best case for a sorted
+ * array.  LongSparseArray filled with put() shifts the array on every insert,
+ * see {@link VenueMapPutBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class VenueMapBenchmark {
+	private static final int LOOKUPS = 1024;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int venues;
+
+	private List<Venue> mVenues;
+	private final long[] mLookups = new long[LOOKUPS];
+
+	private LongVenueMap mLongVenueMap;
+	private Map<Long, Venue> mHashMap;
+	private long[] mSortedIds;
+	private Venue[] mSortedVenues;
+
+	@Setup
+	public void setUp() {
+		mVenues = new FeedGenerator(venues, 0, 1).venues();
+		Random random = new Random(2);
+		for (int i = 0; i < LOOKUPS; i++) {
+			mLookups[i] = mVenues.get(random.nextInt(venues)).getId();
+		}
+
+		mLongVenueMap = buildLongVenueMap();
+		mHashMap = buildHashMap();
+		buildSortedArray();
+	}
+
+	@Benchmark
+	public LongVenueMap buildLongVenueMap() {
+		return new LongVenueMap(mVenues);
+	}
+
+	@Benchmark
+	public Map<Long, Venue> buildHashMap() {
+		Map<Long, Venue> map = new HashMap<Long, Venue>(mVenues.size() * 2);
+		for (Venue venue : mVenues) {
+			map.put(venue.getId(), venue);
+		}
+		return map;
+	}
+
+	@Benchmark
+	public Venue[] buildSortedArray() {
+		int size = mVenues.size();
+		long[] ids = new long[size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = mVenues.get(i).getId();
+		}
+		Arrays.sort(ids);
+		Venue[] sorted = new Venue[size];
+		for (Venue venue : mVenues) {
+			sorted[Arrays.binarySearch(ids, venue.getId())] = venue;
+		}
+		mSortedIds = ids;
+		mSortedVenues = sorted;
+		return sorted;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void getLongVenueMap(Blackhole blackhole) {
+		for (long id : mLookups) {
+			blackhole.consume(mLongVenueMap.get(id));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void getHashMap(Blackhole blackhole) {
+		for (long id : mLookups) {
+			blackhole.consume(mHashMap.get(id));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void getSortedArray(Blackhole blackhole) {
+		for (long id : mLookups) {
+			int i = Arrays.binarySearch(mSortedIds, id);
+			blackhole.consume(i >= 0 ? mSortedVenues[i] : null);
+		}
+	}
+}
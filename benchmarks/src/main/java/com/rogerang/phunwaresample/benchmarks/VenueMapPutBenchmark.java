@@ -0,0 +1,78 @@
+package com.rogerang.phunwaresample.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.rogerang.phunwaresample.content.LongVenueMap;
+import com.rogerang.phunwaresample.content.Venue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a venue id map one put at a time, as android.util.LongSparseArray
+ * does: a binary search and an array shift per new id, O(n^2) for ids in
+ * feed order.  {@link VenueMapBenchmark#buildSortedArray()} is the sort-once
+ * alternative.  Stops at 100k venues, 1M takes minutes per build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class VenueMapPutBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int venues;
+
+	private List<Venue> mVenues;
+
+	@Setup
+	public void setUp() {
+		// ids come out of the generator shuffled, like a feed
+		mVenues = new FeedGenerator(venues, 0, 1).venues();
+	}
+
+	@Benchmark
+	public LongVenueMap buildLongVenueMap() {
+		return new LongVenueMap(mVenues);
+	}
+
+	@Benchmark
+	public Venue[] buildSortedArrayByPut() {
+		// LongSparseArray's default capacity and growth
+		long[] ids = new long[10];
+		Venue[] values = new Venue[10];
+		int size = 0;
+		for (Venue venue : mVenues) {
+			long id = venue.getId();
+			int i = Arrays.binarySearch(ids, 0, size, id);
+			if (i >= 0) {
+				values[i] = venue;
+				continue;
+			}
+			i = ~i;
+			if (size == ids.length) {
+				int capacity = size <= 4 ? 8 : size * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			System.arraycopy(ids, i, ids, i + 1, size - i);
+			System.arraycopy(values, i, values, i + 1, size - i);
+			ids[i] = id;
+			values[i] = venue;
+			size++;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,104 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Cancellation flag for one load, checked by long running steps between
+ * chunks of work.  Methods taking a token also accept null for work that
+ * can't be canceled.
+ *
+ * A step blocked somewhere the flag can't be checked, e.g. a network read,
+ * can set a listener to unblock it.
+ */
+public class CancellationToken {
+	private final Executor mListenerExecutor;
+	private volatile boolean mCanceled;
+	private Runnable mOnCancelListener;
+
+	/**
+	 * New token that runs the cancel listener on the canceling thread.
+	 */
+	public CancellationToken() {
+		this(null);
+	}
+
+	/**
+	 * New token that runs the cancel listener on an executor, e.g. to keep
+	 * closing a connection off the main thread.
+	 * @param listenerExecutor executor for the cancel listener, or null for
+	 * the canceling thread
+	 */
+	public CancellationToken(Executor listenerExecutor) {
+		mListenerExecutor = listenerExecutor;
+	}
+
+	/**
+	 * Cancel the load.  The flag is set straight away, the cancel listener
+	 * runs on the listener executor.
+	 */
+	public void cancel() {
+		Runnable listener;
+		synchronized (this) {
+			if (mCanceled) {
+				return;
+			}
+			mCanceled = true;
+			listener = mOnCancelListener;
+		}
+		if (listener != null) {
+			runListener(listener);
+		}
+	}
+
+	/**
+	 * @return true if the load was canceled
+	 */
+	public boolean isCanceled() {
+		return mCanceled;
+	}
+
+	/**
+	 * Set the action that unblocks the current step, or null once the step
+	 * is done.  Runs it straight away if already canceled.
+	 * @param listener action to run on cancel, must be safe to call from any
+	 * thread
+	 */
+	public void setOnCancelListener(Runnable listener) {
+		synchronized (this) {
+			mOnCancelListener = listener;
+			if (!mCanceled || listener == null) {
+				return;
+			}
+		}
+		runListener(listener);
+	}
+
+	private void runListener(Runnable listener) {
+		if (mListenerExecutor != null) {
+			mListenerExecutor.execute(listener);
+		} else {
+			listener.run();
+		}
+	}
+
+	/**
+	 * @param token token, or null if the work can't be canceled
+	 * @throws LoadCanceledException if the token was canceled
+	 */
+	public static void throwIfCanceled(CancellationToken token) throws LoadCanceledException {
+		if (token != null && token.mCanceled) {
+			throw new LoadCanceledException();
+		}
+	}
+
+	/**
+	 * Set the cancel listener of a token that may be null.
+	 * @param token token, or null if the work can't be canceled
+	 * @param listener listener, or null to clear
+	 */
+	public static void setOnCancelListener(CancellationToken token, Runnable listener) {
+		if (token != null) {
+			token.setOnCancelListener(listener);
+		}
+	}
+}
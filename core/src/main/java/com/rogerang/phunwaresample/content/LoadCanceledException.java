@@ -0,0 +1,16 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.IOException;
+
+/**
+ * Thrown out of a load when its {@link CancellationToken} is canceled.  An
+ * IOException, so it leaves copy loops and parsers the way a failed
+ * transfer would, with the same clean up.
+ */
+public class LoadCanceledException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public LoadCanceledException() {
+		super("Load canceled");
+	}
+}
@@ -0,0 +1,85 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.List;
+
+/**
+ * Immutable map from venue id to venue, built in one pass.
+ *
+ * Open addressing with linear probing over parallel primitive key and value
+ * arrays, kept at most half full.  Lookups are O(1) on average with no boxing,
+ * where LongSparseArray is a binary search and building it from unsorted ids
+ * is O(n^2).
+ */
+public class LongVenueMap {
+	private final long[] mKeys;
+	private final Venue[] mValues; // null marks an empty slot
+	private final int mMask;
+	private final int mSize;
+
+	/**
+	 * Build map.  O(n).
+	 * @param venues venues to map by id, later venues replace earlier ones
+	 * with the same id
+	 */
+	public LongVenueMap(List<Venue> venues) {
+		int capacity = 2;
+		while (capacity < venues.size() * 2) {
+			capacity <<= 1;
+		}
+		mKeys = new long[capacity];
+		mValues = new Venue[capacity];
+		mMask = capacity - 1;
+
+		int size = 0;
+		for (Venue venue : venues) {
+			long key = venue.getId();
+			int slot = slot(key);
+			while (mValues[slot] != null && mKeys[slot] != key) {
+				slot = (slot + 1) & mMask;
+			}
+			if (mValues[slot] == null) {
+				size++;
+			}
+			mKeys[slot] = key;
+			mValues[slot] = venue;
+		}
+		mSize = size;
+	}
+
+	/**
+	 * @param key venue id
+	 * @return venue, or null if not in the map
+	 */
+	public Venue get(long key) {
+		int slot = slot(key);
+		Venue value;
+		while ((value = mValues[slot]) != null) {
+			if (mKeys[slot] == key) {
+				return value;
+			}
+			slot = (slot + 1) & mMask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @return number of distinct ids
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Spread the id bits, ids are often sequential or share low bits.
+	 */
+	private int slot(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key & mMask;
+	}
+}
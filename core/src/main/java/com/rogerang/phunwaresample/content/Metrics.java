@@ -0,0 +1,340 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process timers, histograms and counters for the loading pipeline.
+ *
+ * Metrics are created once by name, usually into static fields, and
+ * recording is a few atomic adds, so they stay on in release builds.  Read
+ * them back with {@link #getTimers()}, {@link #getHistograms()},
+ * {@link #getCounters()} or {@link #dump()}.  Timed stages are also
+ * reported to the {@link Tracer}, if one is set, e.g. to show up in systrace.
+ */
+public final class Metrics {
+	private static final ConcurrentMap<String, Timer> sTimers = new ConcurrentHashMap<String, Timer>();
+	private static final ConcurrentMap<String, Histogram> sHistograms = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentMap<String, Counter> sCounters = new ConcurrentHashMap<String, Counter>();
+	private static volatile Tracer sTracer;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Receives timed stages as nested sections on the thread that ran them.
+	 */
+	public interface Tracer {
+		public void beginSection(String name);
+
+		public void endSection();
+	}
+
+	/**
+	 * Set the tracer for timed stages.  Set it once at startup, a stage
+	 * running while it changes may report an unmatched begin or end.
+	 * @param tracer tracer, or null for none
+	 */
+	public static void setTracer(Tracer tracer) {
+		sTracer = tracer;
+	}
+
+	/**
+	 * Get or create a timer.
+	 * @param name stage name, e.g. "venues.parse"
+	 * @return the timer with that name
+	 */
+	public static Timer timer(String name) {
+		Timer timer = sTimers.get(name);
+		if (timer == null) {
+			Timer newTimer = new Timer(name);
+			timer = sTimers.putIfAbsent(name, newTimer);
+			if (timer == null) {
+				timer = newTimer;
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * Get or create a histogram, for values that aren't durations.
+	 * @param name histogram name, e.g. "executor.network.queueDepth"
+	 * @return the histogram with that name
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = sHistograms.get(name);
+		if (histogram == null) {
+			Histogram newHistogram = new Histogram(name);
+			histogram = sHistograms.putIfAbsent(name, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Get or create a counter.
+	 * @param name counter name, e.g. "image.bytesDownloaded"
+	 * @return the counter with that name
+	 */
+	public static Counter counter(String name) {
+		Counter counter = sCounters.get(name);
+		if (counter == null) {
+			Counter newCounter = new Counter(name);
+			counter = sCounters.putIfAbsent(name, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * @return all timers by name, in name order
+	 */
+	public static Map<String, Timer> getTimers() {
+		return new TreeMap<String, Timer>(sTimers);
+	}
+
+	/**
+	 * @return all histograms other than timers by name, in name order
+	 */
+	public static Map<String, Histogram> getHistograms() {
+		return new TreeMap<String, Histogram>(sHistograms);
+	}
+
+	/**
+	 * @return all counters by name, in name order
+	 */
+	public static Map<String, Counter> getCounters() {
+		return new TreeMap<String, Counter>(sCounters);
+	}
+
+	/**
+	 * Zero every metric, e.g. before measuring a scenario.
+	 */
+	public static void reset() {
+		for (Timer timer : sTimers.values()) {
+			timer.reset();
+		}
+		for (Histogram histogram : sHistograms.values()) {
+			histogram.reset();
+		}
+		for (Counter counter : sCounters.values()) {
+			counter.reset();
+		}
+	}
+
+	/**
+	 * @return every metric, one per line
+	 */
+	public static String dump() {
+		StringBuilder out = new StringBuilder();
+		for (Timer timer : getTimers().values()) {
+			out.append(timer).append('\n');
+		}
+		for (Histogram histogram : getHistograms().values()) {
+			out.append(histogram).append('\n');
+		}
+		for (Counter counter : getCounters().values()) {
+			out.append(counter).append('\n');
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Running total, e.g. bytes moved or cache hits.
+	 */
+	public static final class Counter {
+		private final String mName;
+		private final AtomicLong mValue = new AtomicLong();
+
+		private Counter(String name) {
+			mName = name;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public void increment() {
+			mValue.incrementAndGet();
+		}
+
+		public void add(long delta) {
+			mValue.addAndGet(delta);
+		}
+
+		public long get() {
+			return mValue.get();
+		}
+
+		void reset() {
+			mValue.set(0);
+		}
+
+		@Override
+		public String toString() {
+			return mName + " " + mValue.get();
+		}
+	}
+
+	/**
+	 * Distribution of non-negative values in power of two buckets, so
+	 * recording never allocates or locks.  Percentiles are the upper bound of
+	 * the bucket they fall in, within a factor of two.
+	 */
+	public static class Histogram {
+		private static final int BUCKETS = 64;
+
+		private final String mName;
+
+		// bucket i holds values with i significant bits, 0 in bucket 0
+		private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong mCount = new AtomicLong();
+		private final AtomicLong mSum = new AtomicLong();
+		private final AtomicLong mMax = new AtomicLong();
+
+		private Histogram(String name) {
+			mName = name;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		/**
+		 * @param value value to record, negative values count as 0
+		 */
+		public void record(long value) {
+			if (value < 0) {
+				value = 0;
+			}
+			mBuckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+			mCount.incrementAndGet();
+			mSum.addAndGet(value);
+			long max;
+			while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+				// lost a race with another larger value, check again
+			}
+		}
+
+		public long getCount() {
+			return mCount.get();
+		}
+
+		public long getSum() {
+			return mSum.get();
+		}
+
+		public long getMax() {
+			return mMax.get();
+		}
+
+		/**
+		 * @return mean value, 0 if nothing was recorded
+		 */
+		public long getMean() {
+			long count = mCount.get();
+			return count != 0 ? mSum.get() / count : 0;
+		}
+
+		/**
+		 * @param fraction between 0 and 1, e.g. 0.9 for the 90th percentile
+		 * @return value at most this fraction of recorded values exceed, 0 if
+		 * nothing was recorded
+		 */
+		public long getPercentile(double fraction) {
+			long count = 0;
+			long[] buckets = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = mBuckets.get(i);
+				count += buckets[i];
+			}
+
+			long rank = (long) Math.ceil(count * fraction);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					long upper = i == 0 ? 0 : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+					return Math.min(upper, mMax.get());
+				}
+			}
+			return 0;
+		}
+
+		void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				mBuckets.set(i, 0);
+			}
+			mCount.set(0);
+			mSum.set(0);
+			mMax.set(0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s count=%d mean=%d p50=%d p90=%d p99=%d max=%d", mName, getCount(), getMean(),
+					getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), getMax());
+		}
+	}
+
+	/**
+	 * Histogram of durations of one stage, in nanoseconds from the monotonic
+	 * clock.  Use as
+	 * <pre>
+	 * long start = TIMER.start();
+	 * try {
+	 *     ...
+	 * } finally {
+	 *     TIMER.stop(start);
+	 * }
+	 * </pre>
+	 * Start and stop must be called on the same thread, so trace sections nest.
+	 */
+	public static final class Timer extends Histogram {
+		private Timer(String name) {
+			super(name);
+		}
+
+		/**
+		 * Start timing.
+		 * @return start time to pass to {@link #stop(long)}
+		 */
+		public long start() {
+			Tracer tracer = sTracer;
+			if (tracer != null) {
+				tracer.beginSection(getName());
+			}
+			return System.nanoTime();
+		}
+
+		/**
+		 * Stop timing and record the duration.
+		 * @param start value from {@link #start()}
+		 * @return duration in nanoseconds
+		 */
+		public long stop(long start) {
+			long duration = System.nanoTime() - start;
+			record(duration);
+			Tracer tracer = sTracer;
+			if (tracer != null) {
+				tracer.endSection();
+			}
+			return duration;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+					getName(), getCount(), getMean() / 1e6, getPercentile(0.5) / 1e6,
+					getPercentile(0.9) / 1e6, getPercentile(0.99) / 1e6, getMax() / 1e6);
+		}
+	}
+}
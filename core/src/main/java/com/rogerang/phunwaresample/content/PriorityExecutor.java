@@ -0,0 +1,163 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool that runs queued work by priority, lowest value
+ * first, and in submission order within a priority.
+ *
+ * Time spent queued and the queue depth at each submission are recorded as
+ * "executor.&lt;name&gt;.wait" and "executor.&lt;name&gt;.queueDepth" in
+ * {@link Metrics}, for sizing the pool.
+ */
+public class PriorityExecutor {
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final String mName;
+	private final ThreadPoolExecutor mExecutor;
+	private final AtomicLong mSequence = new AtomicLong();
+	private final Metrics.Timer mWaitTimer;
+	private final Metrics.Histogram mQueueDepth;
+
+	/**
+	 * New priority executor.  Threads are started as needed and stop after
+	 * being idle for a while.
+	 * @param name name for metrics
+	 * @param threadCount most tasks to run at once
+	 * @param threadFactory factory for the pool threads
+	 */
+	public PriorityExecutor(String name, int threadCount, ThreadFactory threadFactory) {
+		mName = name;
+		mExecutor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), threadFactory);
+		mExecutor.allowCoreThreadTimeOut(true);
+		mWaitTimer = Metrics.timer("executor." + name + ".wait");
+		mQueueDepth = Metrics.histogram("executor." + name + ".queueDepth");
+	}
+
+	/**
+	 * Queue work without waiting for it.
+	 * @param runnable work to run, exceptions are only logged
+	 * @param priority lower runs sooner
+	 */
+	public void submit(final Runnable runnable, int priority) {
+		enqueue(new Task<Void>(new Callable<Void>() {
+			@Override
+			public Void call() {
+				try {
+					runnable.run();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				return null;
+			}
+		}, priority));
+	}
+
+	/**
+	 * Run work on the pool and wait for it.  Canceling takes the work off the
+	 * queue if it hasn't started, work already running should check the
+	 * token itself.  Don't call from this executor's own threads.
+	 * @param callable work to run
+	 * @param priority lower runs sooner
+	 * @param cancellation cancellation for the wait, or null
+	 * @return result of the work
+	 * @throws LoadCanceledException if canceled before the work started
+	 * @throws IOException thrown by the work
+	 */
+	public <T> T invoke(Callable<T> callable, int priority, CancellationToken cancellation) throws IOException {
+		CancellationToken.throwIfCanceled(cancellation);
+		final Task<T> task = new Task<T>(callable, priority);
+		CancellationToken.setOnCancelListener(cancellation, new Runnable() {
+			@Override
+			public void run() {
+				// only while queued, the caller may have lent the work its buffers
+				if (mExecutor.remove(task)) {
+					task.cancel(false);
+				}
+			}
+		});
+
+		try {
+			enqueue(task);
+			return task.get();
+		} catch (CancellationException e) {
+			throw new LoadCanceledException();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for " + mName);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			CancellationToken.setOnCancelListener(cancellation, null);
+		}
+	}
+
+	private void enqueue(Task<?> task) {
+		mExecutor.execute(task);
+		mQueueDepth.record(mExecutor.getQueue().size());
+	}
+
+	/**
+	 * @return tasks waiting for a thread
+	 */
+	public int getQueueDepth() {
+		return mExecutor.getQueue().size();
+	}
+
+	/**
+	 * @return tasks running now
+	 */
+	public int getActiveCount() {
+		return mExecutor.getActiveCount();
+	}
+
+	/**
+	 * Queued work, ordered by priority then by submission.
+	 */
+	private class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+		private final int mPriority;
+		private final long mSequence;
+		private final long mQueuedAt;
+
+		Task(Callable<T> callable, int priority) {
+			super(callable);
+			mPriority = priority;
+			mSequence = PriorityExecutor.this.mSequence.getAndIncrement();
+			mQueuedAt = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			mWaitTimer.record(System.nanoTime() - mQueuedAt);
+			super.run();
+		}
+
+		@Override
+		public int compareTo(Task<?> another) {
+			if (mPriority != another.mPriority) {
+				return mPriority < another.mPriority ? -1 : 1;
+			}
+			return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.rogerang.phunwaresample.content;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * Parser and formatter for the schedule date format "yyyy-MM-dd HH:mm:ss Z",
+ * e.g. "2015-01-31 18:00:00 -0800".
+ *
+ * Works on chars with plain arithmetic, so it is thread-safe and the parse
+ * path allocates nothing.  Anything outside the fixed layout is handed to
+ * {@link SimpleDateFormat} so lenient input is still accepted as before.
+ * Like SimpleDateFormat, formatting uses the default time zone at the time
+ * this class is loaded.
+ */
+public final class ScheduleDateFormat {
+	/** Accepted string format for schedule dates */
+	public static final String PATTERN = "yyyy-MM-dd HH:mm:ss Z";
+
+	/** Length of a formatted date */
+	public static final int LENGTH = 25;
+
+	private static final TimeZone TIME_ZONE = TimeZone.getDefault();
+
+	private static final long MILLIS_PER_MINUTE = 60 * 1000;
+	private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+	private ScheduleDateFormat() {
+	}
+
+	/**
+	 * Parse a schedule date.
+	 * @param text date string
+	 * @return epoch millis
+	 * @throws ParseException if text is not a date
+	 */
+	public static long parse(CharSequence text) throws ParseException {
+		if (text.length() == LENGTH
+				&& text.charAt(4) == '-' && text.charAt(7) == '-' && text.charAt(10) == ' '
+				&& text.charAt(13) == ':' && text.charAt(16) == ':' && text.charAt(19) == ' ') {
+			int year = digits(text, 0, 4);
+			int month = digits(text, 5, 2);
+			int day = digits(text, 8, 2);
+			int hour = digits(text, 11, 2);
+			int minute = digits(text, 14, 2);
+			int second = digits(text, 17, 2);
+			int offsetHours = digits(text, 21, 2);
+			int offsetMinutes = digits(text, 23, 2);
+			char sign = text.charAt(20);
+
+			if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+					&& hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59
+					&& offsetHours >= 0 && offsetMinutes >= 0 && offsetMinutes <= 59
+					&& (sign == '+' || sign == '-')) {
+				long offset = (offsetHours * 60 + offsetMinutes) * MILLIS_PER_MINUTE;
+				if (sign == '-') {
+					offset = -offset;
+				}
+				return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+						+ ((hour * 60L + minute) * 60L + second) * 1000L - offset;
+			}
+		}
+
+		// not the fixed layout, let the general parser decide
+		return new SimpleDateFormat(PATTERN).parse(text.toString()).getTime();
+	}
+
+	/**
+	 * Format a schedule date.
+	 * @param millis epoch millis
+	 * @return date string
+	 */
+	public static String format(long millis) {
+		char[] buffer = new char[LENGTH];
+		if (!format(millis, buffer, 0)) {
+			return new SimpleDateFormat(PATTERN).format(millis);
+		}
+		return new String(buffer);
+	}
+
+	/**
+	 * Format a schedule date into a char array.
+	 * @param millis epoch millis
+	 * @param buffer destination, needs {@link #LENGTH} chars from offset
+	 * @param offset start position in buffer
+	 * @return false if the year is outside 0..9999 and nothing was written
+	 */
+	public static boolean format(long millis, char[] buffer, int offset) {
+		int zoneOffset = TIME_ZONE.getOffset(millis);
+		long local = millis + zoneOffset;
+		long days = floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int) (local - days * MILLIS_PER_DAY);
+
+		// civil from days, see http://howardhinnant.github.io/date_algorithms.html
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		if (year < 0 || year > 9999) {
+			return false;
+		}
+
+		int seconds = millisOfDay / 1000;
+		putDigits(buffer, offset, (int) year, 4);
+		buffer[offset + 4] = '-';
+		putDigits(buffer, offset + 5, month, 2);
+		buffer[offset + 7] = '-';
+		putDigits(buffer, offset + 8, day, 2);
+		buffer[offset + 10] = ' ';
+		putDigits(buffer, offset + 11, seconds / 3600, 2);
+		buffer[offset + 13] = ':';
+		putDigits(buffer, offset + 14, (seconds / 60) % 60, 2);
+		buffer[offset + 16] = ':';
+		putDigits(buffer, offset + 17, seconds % 60, 2);
+		buffer[offset + 19] = ' ';
+
+		int zoneMinutes = zoneOffset / (int) MILLIS_PER_MINUTE;
+		buffer[offset + 20] = zoneMinutes < 0 ? '-' : '+';
+		zoneMinutes = Math.abs(zoneMinutes);
+		putDigits(buffer, offset + 21, zoneMinutes / 60, 2);
+		putDigits(buffer, offset + 23, zoneMinutes % 60, 2);
+		return true;
+	}
+
+	/**
+	 * @return value of count decimal digits at start, or -1 if not all digits
+	 */
+	private static int digits(CharSequence text, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static void putDigits(char[] buffer, int start, int value, int count) {
+		for (int i = start + count - 1; i >= start; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			return leap ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Days since 1970-01-01 for a proleptic Gregorian date.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yoe = y - era * 400;
+		long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			q--;
+		}
+		return q;
+	}
+}
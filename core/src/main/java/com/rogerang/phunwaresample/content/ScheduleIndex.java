@@ -0,0 +1,279 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable index of the schedule items of all venues, for "happening now"
+ * and time window queries.
+ *
+ * Items are kept in a centered interval tree for stabbing queries and in an
+ * array sorted by start time.  An item overlaps a window [from, to] exactly
+ * when it is happening at from, or it starts inside (from, to], so window
+ * queries are a stabbing query plus a binary search, O(log n + k) overall
+ * with no duplicates to remove.  Items missing either date are not indexed.
+ */
+public class ScheduleIndex {
+
+	/**
+	 * A schedule item and the venue it belongs to.
+	 */
+	public static class Match {
+		private final long mVenueId;
+		private final ScheduleItem mItem;
+
+		Match(long venueId, ScheduleItem item) {
+			mVenueId = venueId;
+			mItem = item;
+		}
+
+		public long getVenueId() {
+			return mVenueId;
+		}
+
+		public ScheduleItem getItem() {
+			return mItem;
+		}
+	}
+
+	private final long[] mStart;
+	private final long[] mEnd;
+	private final long[] mVenueId;
+	private final ScheduleItem[] mItems;
+
+	private final int[] mByStart;      // item indexes sorted by start
+	private final long[] mSortedStart; // start times in mByStart order
+	private final Node mRoot;
+
+	/**
+	 * Build index.  O(n log n) in the number of schedule items.
+	 * @param venues venues with schedules
+	 */
+	public ScheduleIndex(List<Venue> venues) {
+		int count = 0;
+		for (Venue venue : venues) {
+			List<ScheduleItem> schedule = venue.getSchedule();
+			if (schedule != null) {
+				count += schedule.size();
+			}
+		}
+
+		long[] start = new long[count];
+		long[] end = new long[count];
+		long[] venueId = new long[count];
+		ScheduleItem[] items = new ScheduleItem[count];
+		int n = 0;
+		for (Venue venue : venues) {
+			List<ScheduleItem> schedule = venue.getSchedule();
+			if (schedule == null) {
+				continue;
+			}
+			for (ScheduleItem item : schedule) {
+				long s = item.getStartTime();
+				long e = item.getEndTime();
+				if (s == ScheduleItem.NO_DATE || e == ScheduleItem.NO_DATE) {
+					continue;
+				}
+				start[n] = Math.min(s, e);
+				end[n] = Math.max(s, e);
+				venueId[n] = venue.getId();
+				items[n] = item;
+				n++;
+			}
+		}
+		mStart = Arrays.copyOf(start, n);
+		mEnd = Arrays.copyOf(end, n);
+		mVenueId = Arrays.copyOf(venueId, n);
+		mItems = Arrays.copyOf(items, n);
+
+		mByStart = sortedBy(mStart, identity(n), true);
+		mSortedStart = new long[n];
+		for (int i = 0; i < n; i++) {
+			mSortedStart[i] = mStart[mByStart[i]];
+		}
+		mRoot = build(mByStart);
+	}
+
+	/**
+	 * @return number of schedule items indexed
+	 */
+	public int size() {
+		return mItems.length;
+	}
+
+	/**
+	 * Find items in progress at a time, start and end inclusive.
+	 * @param time epoch millis
+	 * @return matching items, in no particular order
+	 */
+	public List<Match> happeningAt(long time) {
+		List<Match> result = new ArrayList<Match>();
+		stab(mRoot, time, result);
+		return result;
+	}
+
+	/**
+	 * Find items overlapping a time window, both ends inclusive.
+	 * @param from window start, epoch millis
+	 * @param to window end, epoch millis
+	 * @return matching items, in no particular order
+	 */
+	public List<Match> overlapping(long from, long to) {
+		List<Match> result = new ArrayList<Match>();
+		if (to < from) {
+			return result;
+		}
+
+		stab(mRoot, from, result);
+
+		// plus everything starting after from, up to and including to
+		int first = upperBound(from);
+		for (int i = first; i < mSortedStart.length && mSortedStart[i] <= to; i++) {
+			add(mByStart[i], result);
+		}
+		return result;
+	}
+
+	private void add(int index, List<Match> result) {
+		result.add(new Match(mVenueId[index], mItems[index]));
+	}
+
+	/**
+	 * @return position of first start time greater than time
+	 */
+	private int upperBound(long time) {
+		int lo = 0, hi = mSortedStart.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (mSortedStart[mid] <= time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private void stab(Node node, long time, List<Match> result) {
+		while (node != null) {
+			if (time < node.center) {
+				// every item here ends at or after center, so only the start matters
+				for (int index : node.byStart) {
+					if (mStart[index] > time) {
+						break;
+					}
+					add(index, result);
+				}
+				node = node.left;
+			} else if (time > node.center) {
+				// every item here starts at or before center, so only the end matters
+				for (int index : node.byEnd) {
+					if (mEnd[index] < time) {
+						break;
+					}
+					add(index, result);
+				}
+				node = node.right;
+			} else {
+				for (int index : node.byStart) {
+					add(index, result);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Node of the centered interval tree, holding the items that contain its
+	 * center.  Items entirely before the center are on the left, entirely after
+	 * on the right.
+	 */
+	private static class Node {
+		long center;
+		int[] byStart; // ascending start
+		int[] byEnd;   // descending end
+		Node left;
+		Node right;
+	}
+
+	/**
+	 * Build a subtree.
+	 * @param indexes items sorted by start
+	 */
+	private Node build(int[] indexes) {
+		if (indexes.length == 0) {
+			return null;
+		}
+
+		// center on the median start, so at least half the items are not on
+		// the right and the median item itself stays in this node
+		Node node = new Node();
+		node.center = mStart[indexes[indexes.length / 2]];
+
+		int leftCount = 0, rightCount = 0, midCount = 0;
+		for (int index : indexes) {
+			if (mEnd[index] < node.center) {
+				leftCount++;
+			} else if (mStart[index] > node.center) {
+				rightCount++;
+			} else {
+				midCount++;
+			}
+		}
+
+		int[] left = new int[leftCount];
+		int[] right = new int[rightCount];
+		int[] mid = new int[midCount];
+		leftCount = rightCount = midCount = 0;
+		for (int index : indexes) {
+			if (mEnd[index] < node.center) {
+				left[leftCount++] = index;
+			} else if (mStart[index] > node.center) {
+				right[rightCount++] = index;
+			} else {
+				mid[midCount++] = index;
+			}
+		}
+
+		// sub arrays keep the start order
+		node.byStart = mid;
+		node.byEnd = sortedBy(mEnd, mid, false);
+		node.left = build(left);
+		node.right = build(right);
+		return node;
+	}
+
+	private static int[] identity(int n) {
+		int[] result = new int[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = i;
+		}
+		return result;
+	}
+
+	/**
+	 * Sort item indexes by a key.
+	 * @return new array of indexes
+	 */
+	private static int[] sortedBy(final long[] keys, int[] indexes, final boolean ascending) {
+		Integer[] boxed = new Integer[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			boxed[i] = indexes[i];
+		}
+		Arrays.sort(boxed, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer lhs, Integer rhs) {
+				long l = keys[lhs], r = keys[rhs];
+				int result = l < r ? -1 : (l == r ? 0 : 1);
+				return ascending ? result : -result;
+			}
+		});
+		int[] result = new int[indexes.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = boxed[i];
+		}
+		return result;
+	}
+}
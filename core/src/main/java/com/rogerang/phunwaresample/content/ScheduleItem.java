@@ -0,0 +1,108 @@
+package com.rogerang.phunwaresample.content;
+
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Schedule data for a Venue event, populated from downloaded data.
+ *
+ * Start and end are held as epoch millis, JSON "start_date" and "end_date"
+ * strings use {@link ScheduleDateFormat#PATTERN}.
+ */
+public class ScheduleItem {
+	/** Time value for a missing start or end date */
+	public static final long NO_DATE = Long.MIN_VALUE;
+
+	private long mStartTime = NO_DATE;
+	private long mEndTime = NO_DATE;
+
+	public ScheduleItem() {
+
+	}
+
+	public ScheduleItem(long startTime, long endTime) {
+		mStartTime = startTime;
+		mEndTime = endTime;
+	}
+
+	public ScheduleItem(Date startDate, Date endDate) {
+		setStartDate(startDate);
+		setEndDate(endDate);
+	}
+
+	public ScheduleItem(String startDate, String endDate) throws ParseException {
+		mStartTime = ScheduleDateFormat.parse(startDate);
+		mEndTime = ScheduleDateFormat.parse(endDate);
+	}
+
+	/**
+	 * @return start time in epoch millis, or {@link #NO_DATE}
+	 */
+	public long getStartTime() {
+		return mStartTime;
+	}
+
+	public void setStartTime(long startTime) {
+		mStartTime = startTime;
+	}
+
+	/**
+	 * @return end time in epoch millis, or {@link #NO_DATE}
+	 */
+	public long getEndTime() {
+		return mEndTime;
+	}
+
+	public void setEndTime(long endTime) {
+		mEndTime = endTime;
+	}
+
+	public Date getStartDate() {
+		return mStartTime != NO_DATE ? new Date(mStartTime) : null;
+	}
+
+	public void setStartDate(Date startDate) {
+		mStartTime = startDate != null ? startDate.getTime() : NO_DATE;
+	}
+
+	public Date getEndDate() {
+		return mEndTime != NO_DATE ? new Date(mEndTime) : null;
+	}
+
+	public void setEndDate(Date endDate) {
+		mEndTime = endDate != null ? endDate.getTime() : NO_DATE;
+	}
+
+	public void setStartDate(String startDate) throws ParseException {
+		mStartTime = ScheduleDateFormat.parse(startDate);
+	}
+
+	public void setEndDate(String endDate) throws ParseException {
+		mEndTime = ScheduleDateFormat.parse(endDate);
+	}
+
+	public String getStartDateString() {
+		return mStartTime != NO_DATE ? ScheduleDateFormat.format(mStartTime) : null;
+	}
+
+	public String getEndDateString() {
+		return mEndTime != NO_DATE ? ScheduleDateFormat.format(mEndTime) : null;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		boolean result = false;
+		if (o instanceof ScheduleItem) {
+			result = mStartTime == ((ScheduleItem) o).mStartTime
+					&& mEndTime == ((ScheduleItem) o).mEndTime;
+		}
+		return result;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = (int) (mStartTime ^ (mStartTime >>> 32));
+		return 31 * result + (int) (mEndTime ^ (mEndTime >>> 32));
+	}
+}
@@ -46,7 +46,9 @@ public class Venue {
 	private List<ScheduleItem> mSchedule;
 
 	// computed fields
-	private float mDistance;
+	private transient String mDisplayName;
+	private transient String mDisplayAddress;
+	private transient volatile List<String> mScheduleText;
 
 	public String getDescription() {
 		return mDescription;
@@ -70,6 +72,22 @@ public class Venue {
 
 	public void setSchedule(List<ScheduleItem> schedule) {
 		mSchedule = schedule;
+		mScheduleText = null;
+	}
+
+	/**
+	 * Schedule lines are formatted by the app's ScheduleTextLoader.
+	 * @return schedule lines for display, or null if not formatted yet
+	 */
+	public List<String> getScheduleText() {
+		return mScheduleText;
+	}
+
+	/**
+	 * @param scheduleText schedule lines for display
+	 */
+	public void setScheduleText(List<String> scheduleText) {
+		mScheduleText = scheduleText;
 	}
 
 	public String getTollFreePhone() {
@@ -106,6 +124,7 @@ public class Venue {
 
 	public void setName(String name) {
 		mName = name;
+		mDisplayName = null;
 	}
 
 	public String getAddress() {
@@ -114,6 +133,7 @@ public class Venue {
 
 	public void setAddress(String address) {
 		mAddress = address;
+		mDisplayAddress = null;
 	}
 
 	public String getCity() {
@@ -164,12 +184,33 @@ public class Venue {
 		mLongitude = longitude;
 	}
 
-	public float getDistance() {
-		return mDistance;
+	/**
+	 * Compute list display text, off the UI thread, so binding a row is just
+	 * field reads.
+	 */
+	public void prepareDisplayText() {
+		mDisplayName = mName != null ? mName.trim() : "";
+		mDisplayAddress = mAddress != null ? mAddress.trim() : "";
+	}
+
+	/**
+	 * @return name for display, never null
+	 */
+	public String getDisplayName() {
+		if (mDisplayName == null) {
+			prepareDisplayText();
+		}
+		return mDisplayName;
 	}
 
-	public void setDistance(float distance) {
-		mDistance = distance;
+	/**
+	 * @return address for display, never null
+	 */
+	public String getDisplayAddress() {
+		if (mDisplayAddress == null) {
+			prepareDisplayText();
+		}
+		return mDisplayAddress;
 	}
 
 	@Override
@@ -185,6 +226,36 @@ public class Venue {
 		return Long.valueOf(mId).hashCode();
 	}
 
+	/**
+	 * Compare downloaded fields, unlike {@link #equals(Object)} which only
+	 * compares the id.
+	 * @param other venue to compare with
+	 * @return true if every downloaded field is equal
+	 */
+	public boolean hasSameContent(Venue other) {
+		return other != null
+				&& mId == other.mId
+				&& mPcode == other.mPcode
+				&& Double.compare(mLatitude, other.mLatitude) == 0
+				&& Double.compare(mLongitude, other.mLongitude) == 0
+				&& same(mName, other.mName)
+				&& same(mAddress, other.mAddress)
+				&& same(mCity, other.mCity)
+				&& same(mState, other.mState)
+				&& same(mZip, other.mZip)
+				&& same(mPhone, other.mPhone)
+				&& same(mTollFreePhone, other.mTollFreePhone)
+				&& same(mUrl, other.mUrl)
+				&& same(mDescription, other.mDescription)
+				&& same(mTicketLink, other.mTicketLink)
+				&& same(mImageUrl, other.mImageUrl)
+				&& same(mSchedule, other.mSchedule);
+	}
+
+	private static boolean same(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
 	public int getPcode() {
 		return mPcode;
 	}
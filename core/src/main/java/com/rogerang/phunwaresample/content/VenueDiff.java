@@ -0,0 +1,93 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes between two venue lists, matched by {@link Venue#getId()}.
+ *
+ * Computed in the background so a refresh that changed nothing is dropped
+ * before delivery.  Unchanged venues keep their old instance in the new list,
+ * so anything holding on to them (rows, caches) stays valid and list rows
+ * showing them are not rebound.
+ */
+public class VenueDiff {
+	private final List<Venue> mNewVenues;
+	private boolean mChanged;
+
+	private VenueDiff(List<Venue> newVenues) {
+		mNewVenues = newVenues;
+	}
+
+	/**
+	 * Compare venue lists.  O(n) in the size of both lists.
+	 * @param oldVenues current list, not modified
+	 * @param newVenues freshly loaded list, not modified
+	 * @return changes, see {@link #getNewVenues()} for the list to deliver,
+	 * or null if either list has duplicate ids
+	 */
+	public static VenueDiff compute(List<Venue> oldVenues, List<Venue> newVenues) {
+		Map<Long, Integer> oldPositions = new HashMap<Long, Integer>(oldVenues.size() * 2);
+		for (int i = 0; i < oldVenues.size(); i++) {
+			if (oldPositions.put(oldVenues.get(i).getId(), i) != null) {
+				// duplicate ids can't be matched up
+				return null;
+			}
+		}
+
+		List<Venue> merged = new ArrayList<Venue>(newVenues.size());
+		VenueDiff diff = new VenueDiff(merged);
+		boolean[] kept = new boolean[oldVenues.size()];
+		int lastOldPosition = -1;
+		for (int i = 0; i < newVenues.size(); i++) {
+			Venue venue = newVenues.get(i);
+			Integer oldPosition = oldPositions.get(venue.getId());
+			if (oldPosition == null) {
+				// inserted
+				diff.mChanged = true;
+				merged.add(venue);
+				continue;
+			}
+
+			if (kept[oldPosition]) {
+				return null;
+			}
+			kept[oldPosition] = true;
+			if (oldPosition < lastOldPosition) {
+				// moved
+				diff.mChanged = true;
+			}
+			lastOldPosition = oldPosition;
+
+			Venue oldVenue = oldVenues.get(oldPosition);
+			if (oldVenue.hasSameContent(venue)) {
+				merged.add(oldVenue);
+			} else {
+				diff.mChanged = true;
+				merged.add(venue);
+			}
+		}
+
+		if (merged.size() != oldVenues.size()) {
+			// every new venue was inserted or kept, so some were removed
+			diff.mChanged = true;
+		}
+		return diff;
+	}
+
+	/**
+	 * @return true if nothing was inserted, removed, updated or moved
+	 */
+	public boolean isEmpty() {
+		return !mChanged;
+	}
+
+	/**
+	 * @return new list, reusing old instances of unchanged venues
+	 */
+	public List<Venue> getNewVenues() {
+		return mNewVenues;
+	}
+}
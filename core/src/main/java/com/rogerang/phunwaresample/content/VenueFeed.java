@@ -0,0 +1,280 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local copy of the venue feed, kept up to date with conditional GETs.
+ *
+ * The validators (ETag and Last-Modified) from the response that produced the
+ * cache file are kept in a sidecar file next to it and sent back with the next
+ * request, so an unchanged feed is answered with a bodiless 304.
+ *
+ * The feed is requested gzip encoded and the cache file is always gzip, so
+ * a gzip response is stored as received and anything else is compressed on
+ * the way to disk.  Read it back with {@link #openCache()}.
+ */
+public class VenueFeed {
+	private static final String META_SUFFIX = ".meta";
+	private static final String META_ETAG = "etag";
+	private static final String META_LAST_MODIFIED = "last_modified";
+	private static final int BUFFER_SIZE = 8192;
+
+	// a stalled server must not hold up the feed executor indefinitely
+	private static final int CONNECT_TIMEOUT_MS = 15000;
+	private static final int READ_TIMEOUT_MS = 30000;
+
+	private static final Metrics.Timer CONNECT_TIMER = Metrics.timer("feed.connect");
+	private static final Metrics.Timer DOWNLOAD_TIMER = Metrics.timer("feed.download");
+	private static final Metrics.Counter BYTES_DOWNLOADED = Metrics.counter("feed.bytesDownloaded");
+	private static final Metrics.Counter NOT_MODIFIED = Metrics.counter("feed.notModified");
+	private static final Metrics.Counter MODIFIED = Metrics.counter("feed.modified");
+
+	private final String mUrl;
+	private final File mCacheFile;
+	private final File mMetaFile;
+
+	/**
+	 * New venue feed.
+	 * @param url URL of the feed
+	 * @param cacheFile local copy of the feed
+	 */
+	public VenueFeed(String url, File cacheFile) {
+		mUrl = url;
+		mCacheFile = cacheFile;
+		mMetaFile = new File(cacheFile.getPath() + META_SUFFIX);
+	}
+
+	/**
+	 * @return local copy of the feed.  May not exist.
+	 */
+	public File getCacheFile() {
+		return mCacheFile;
+	}
+
+	/**
+	 * @return true if there is a local copy of the feed
+	 */
+	public boolean hasCache() {
+		return mCacheFile.isFile();
+	}
+
+	/**
+	 * Delete the local copy of the feed and its validators.
+	 */
+	public void delete() {
+		mCacheFile.delete();
+		mMetaFile.delete();
+	}
+
+	/**
+	 * Open the local copy of the feed for reading.
+	 * @return uncompressed feed contents, caller must close
+	 * @throws IOException if there is no local copy or it can't be read
+	 */
+	public InputStream openCache() throws IOException {
+		InputStream inputStream = new FileInputStream(mCacheFile);
+		try {
+			return new GZIPInputStream(inputStream, BUFFER_SIZE);
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Check the feed URL and download it to the cache file if it changed.
+	 * @return true if the cache file was replaced, false if it was still current
+	 * @throws IOException on network errors or unexpected responses.  The
+	 * cache file is left untouched.
+	 */
+	public boolean refresh() throws IOException {
+		return refresh(null);
+	}
+
+	/**
+	 * Check the feed URL and download it to the cache file if it changed.
+	 * Canceling disconnects, which ends a stalled read on Android.  The
+	 * desktop JDK's disconnect waits for the read, so there the transfer
+	 * stops at the next chunk or the read timeout.
+	 * @param cancellation cancellation for the download, or null
+	 * @return true if the cache file was replaced, false if it was still current
+	 * @throws LoadCanceledException if canceled.  The cache file is left
+	 * untouched.
+	 * @throws IOException on network errors or unexpected responses.  The
+	 * cache file is left untouched.
+	 */
+	public boolean refresh(CancellationToken cancellation) throws IOException {
+		HttpURLConnection urlConnection = null;
+		InputStream inputStream = null;
+		OutputStream outputStream = null;
+		File tempFile = null;
+
+		try {
+			CancellationToken.throwIfCanceled(cancellation);
+			urlConnection = (HttpURLConnection) new URL(mUrl).openConnection();
+			urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+			urlConnection.setReadTimeout(READ_TIMEOUT_MS);
+			final HttpURLConnection connection = urlConnection;
+			CancellationToken.setOnCancelListener(cancellation, new Runnable() {
+				@Override
+				public void run() {
+					connection.disconnect();
+				}
+			});
+			// asking explicitly also stops the platform from decompressing the
+			// body for us, so a gzip response goes to disk untouched
+			urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+			if (hasCache()) {
+				addValidators(urlConnection);
+			}
+
+			// up to the response headers
+			long start = CONNECT_TIMER.start();
+			int responseCode;
+			try {
+				responseCode = urlConnection.getResponseCode();
+			} finally {
+				CONNECT_TIMER.stop(start);
+			}
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				NOT_MODIFIED.increment();
+				return false;
+			}
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Unexpected response " + responseCode + " for " + mUrl);
+			}
+
+			// download to a temp file so a failed transfer keeps the old cache,
+			// the body is written as it arrives so this times both
+			start = DOWNLOAD_TIMER.start();
+			try {
+				tempFile = new File(mCacheFile.getPath() + ".tmp");
+				inputStream = urlConnection.getInputStream();
+				outputStream = new FileOutputStream(tempFile);
+				if (!"gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+					outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+				}
+
+				byte buffer[] = new byte[BUFFER_SIZE];
+				int count;
+				while ((count = inputStream.read(buffer)) != -1) {
+					CancellationToken.throwIfCanceled(cancellation);
+					outputStream.write(buffer, 0, count);
+					BYTES_DOWNLOADED.add(count);
+				}
+				outputStream.close();
+				outputStream = null;
+			} finally {
+				DOWNLOAD_TIMER.stop(start);
+			}
+
+			// old validators must never describe the new file
+			CancellationToken.throwIfCanceled(cancellation);
+			mMetaFile.delete();
+			if (!tempFile.renameTo(mCacheFile)) {
+				throw new IOException("Unable to replace " + mCacheFile);
+			}
+			tempFile = null;
+
+			writeMeta(urlConnection.getHeaderField("ETag"),
+					urlConnection.getHeaderField("Last-Modified"));
+			MODIFIED.increment();
+			return true;
+		} catch (IOException e) {
+			// a disconnect from cancel() surfaces as some other I/O error
+			CancellationToken.throwIfCanceled(cancellation);
+			throw e;
+		} finally {
+			CancellationToken.setOnCancelListener(cancellation, null);
+			try {
+				if (inputStream != null)
+					inputStream.close();
+				if (outputStream != null)
+					outputStream.close();
+			} catch (IOException squish) {
+				squish.printStackTrace();
+			}
+			if (tempFile != null)
+				tempFile.delete();
+			if (urlConnection != null)
+				urlConnection.disconnect();
+		}
+	}
+
+	/**
+	 * Add conditional request headers for the current cache file.
+	 * @param urlConnection unconnected request
+	 */
+	private void addValidators(HttpURLConnection urlConnection) {
+		Properties meta = readMeta();
+		String etag = meta.getProperty(META_ETAG);
+		String lastModified = meta.getProperty(META_LAST_MODIFIED);
+
+		if (etag != null) {
+			urlConnection.setRequestProperty("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			// echo the server's own date string back unchanged
+			urlConnection.setRequestProperty("If-Modified-Since", lastModified);
+		} else if (etag == null) {
+			// no sidecar, the file was written after the server copy changed
+			urlConnection.setIfModifiedSince(mCacheFile.lastModified());
+		}
+	}
+
+	private Properties readMeta() {
+		Properties meta = new Properties();
+		if (mMetaFile.isFile()) {
+			InputStream inputStream = null;
+			try {
+				inputStream = new FileInputStream(mMetaFile);
+				meta.load(inputStream);
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				try {
+					if (inputStream != null)
+						inputStream.close();
+				} catch (IOException squish) {
+					squish.printStackTrace();
+				}
+			}
+		}
+		return meta;
+	}
+
+	private void writeMeta(String etag, String lastModified) {
+		Properties meta = new Properties();
+		if (etag != null)
+			meta.setProperty(META_ETAG, etag);
+		if (lastModified != null)
+			meta.setProperty(META_LAST_MODIFIED, lastModified);
+
+		OutputStream outputStream = null;
+		try {
+			outputStream = new FileOutputStream(mMetaFile);
+			meta.store(outputStream, null);
+		} catch (IOException e) {
+			// without validators the next refresh falls back to the file date
+			mMetaFile.delete();
+			e.printStackTrace();
+		} finally {
+			try {
+				if (outputStream != null)
+					outputStream.close();
+			} catch (IOException squish) {
+				squish.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Parser for the venue JSON feed.
+ *
+ * The venue array is streamed one element at a time, and venues can be
+ * handed out in batches while parsing so the first screen shows before the
+ * whole feed is read.  A parser may be shared between threads.
+ */
+public class VenueParser {
+	// Batches start small so the first screen shows quickly and grow to
+	// limit the number of callbacks.
+	private static final int FIRST_BATCH_SIZE = 32;
+	private static final int MAX_BATCH_SIZE = 1024;
+
+	private final Gson mGson;
+
+	/**
+	 * Listener for venues parsed before the whole feed is read.
+	 */
+	public interface BatchListener {
+		/**
+		 * Called on the parsing thread with the next venues in the feed, in order.
+		 * @param batch venues parsed since the last batch
+		 * @param venues all venues parsed so far, only valid during the call
+		 */
+		public void onBatch(List<Venue> batch, List<Venue> venues);
+	}
+
+	public VenueParser() {
+		mGson = new GsonBuilder()
+				.setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+				.registerTypeAdapter(ScheduleItem.class, new ScheduleItemTypeAdapter())
+				.create();
+	}
+
+	/**
+	 * Parse a venue feed.
+	 * @param reader feed JSON, not closed
+	 * @return all venues in the feed
+	 * @throws IOException
+	 */
+	public List<Venue> parse(Reader reader) throws IOException {
+		return parse(reader, null);
+	}
+
+	/**
+	 * Parse a venue feed, handing out venues in batches along the way.
+	 * @param reader feed JSON, not closed
+	 * @param listener listener for batches, or null.  Anything left after the
+	 * last batch only comes with the result.
+	 * @return all venues in the feed
+	 * @throws IOException
+	 */
+	public List<Venue> parse(Reader reader, BatchListener listener) throws IOException {
+		return parse(reader, listener, null);
+	}
+
+	/**
+	 * Parse a venue feed, handing out venues in batches along the way and
+	 * stopping between venues if canceled.
+	 * @param reader feed JSON, not closed
+	 * @param listener listener for batches, or null.  Anything left after the
+	 * last batch only comes with the result.
+	 * @param cancellation cancellation for the parse, or null
+	 * @return all venues in the feed
+	 * @throws LoadCanceledException if canceled
+	 * @throws IOException
+	 */
+	public List<Venue> parse(Reader reader, BatchListener listener, CancellationToken cancellation)
+			throws IOException {
+		JsonReader jsonReader = new JsonReader(reader);
+		List<Venue> venues = new ArrayList<Venue>();
+		int batchSize = FIRST_BATCH_SIZE;
+		int batchStart = 0;
+
+		jsonReader.beginArray();
+		while (jsonReader.hasNext()) {
+			CancellationToken.throwIfCanceled(cancellation);
+			Venue venue = mGson.fromJson(jsonReader, Venue.class);
+			if (venue == null) {
+				continue;
+			}
+			venue.prepareDisplayText();
+			venues.add(venue);
+
+			if (listener != null && venues.size() - batchStart >= batchSize) {
+				listener.onBatch(new ArrayList<Venue>(venues.subList(batchStart, venues.size())), venues);
+				batchStart = venues.size();
+				batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+			}
+		}
+		jsonReader.endArray();
+
+		return venues;
+	}
+
+	/**
+	 * Custom GSON type adapter for {@link ScheduleItem}.  Reads the
+	 * "start_date" and "end_date" strings straight into epoch millis.
+	 */
+	private static class ScheduleItemTypeAdapter extends TypeAdapter<ScheduleItem> {
+		private static final String START_DATE = "start_date";
+		private static final String END_DATE = "end_date";
+
+		@Override
+		public ScheduleItem read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+
+			ScheduleItem item = new ScheduleItem();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (START_DATE.equals(name)) {
+					item.setStartTime(readTime(in));
+				} else if (END_DATE.equals(name)) {
+					item.setEndTime(readTime(in));
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return item;
+		}
+
+		private long readTime(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return ScheduleItem.NO_DATE;
+			}
+			try {
+				return ScheduleDateFormat.parse(in.nextString());
+			} catch (ParseException e) {
+				e.printStackTrace();
+				throw(new JsonParseException(e));
+			}
+		}
+
+		@Override
+		public void write(JsonWriter out, ScheduleItem item) throws IOException {
+			if (item == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			writeTime(out.name(START_DATE), item.getStartTime());
+			writeTime(out.name(END_DATE), item.getEndTime());
+			out.endObject();
+		}
+
+		private void writeTime(JsonWriter out, long time) throws IOException {
+			if (time == ScheduleItem.NO_DATE) {
+				out.nullValue();
+			} else {
+				out.value(ScheduleDateFormat.format(time));
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current venue data, for any thread.
+ *
+ * Data is published as immutable {@link Snapshot}s swapped in atomically, so
+ * readers never lock and never see a half applied refresh.  A refresh builds
+ * the next snapshot in the background while readers keep using the current
+ * one.  The Venue objects themselves are shared between snapshots.
+ */
+public class VenueRepository {
+	private static final VenueRepository sInstance = new VenueRepository();
+
+	private final AtomicReference<Snapshot> mSnapshot = new AtomicReference<Snapshot>(Snapshot.EMPTY);
+	private final List<OnPublishListener> mListeners = new CopyOnWriteArrayList<OnPublishListener>();
+
+	/**
+	 * Listener for new versions of the data.
+	 */
+	public interface OnPublishListener {
+		/**
+		 * Called on the publishing thread once the snapshot is current.
+		 * @param snapshot new current data
+		 */
+		public void onPublish(Snapshot snapshot);
+	}
+
+	/**
+	 * Immutable venue list with lookup by id and indexes.
+	 */
+	public static class Snapshot {
+		/** Snapshot before anything is loaded */
+		public static final Snapshot EMPTY = new Snapshot(new ArrayList<Venue>(), null, null, null);
+
+		private final List<Venue> mVenues;
+		private final LongVenueMap mVenuesById;
+		private final VenueSpatialIndex mSpatialIndex;
+		private final VenueSearchIndex mSearchIndex;
+		private final ScheduleIndex mScheduleIndex;
+
+		/**
+		 * Build snapshot.  O(n), call from a background thread.
+		 * @param venues venues in list order, copied
+		 * @param spatialIndex index over venues, or null while loading
+		 * @param searchIndex index over venues, or null while loading
+		 * @param scheduleIndex index over venues, or null while loading
+		 */
+		public Snapshot(List<Venue> venues, VenueSpatialIndex spatialIndex, VenueSearchIndex searchIndex,
+				ScheduleIndex scheduleIndex) {
+			mVenues = Collections.unmodifiableList(new ArrayList<Venue>(venues));
+			mVenuesById = new LongVenueMap(venues);
+			mSpatialIndex = spatialIndex;
+			mSearchIndex = searchIndex;
+			mScheduleIndex = scheduleIndex;
+		}
+
+		/**
+		 * @param id venue id
+		 * @return venue, or null if not loaded
+		 */
+		public Venue getVenue(long id) {
+			return mVenuesById.get(id);
+		}
+
+		/**
+		 * @return all venues in list order, unmodifiable
+		 */
+		public List<Venue> getVenues() {
+			return mVenues;
+		}
+
+		public int size() {
+			return mVenues.size();
+		}
+
+		/**
+		 * @return location index, null until the first load completes
+		 */
+		public VenueSpatialIndex getSpatialIndex() {
+			return mSpatialIndex;
+		}
+
+		/**
+		 * @return type-ahead index, null until the first load completes
+		 */
+		public VenueSearchIndex getSearchIndex() {
+			return mSearchIndex;
+		}
+
+		/**
+		 * @return schedule time index, null until the first load completes
+		 */
+		public ScheduleIndex getScheduleIndex() {
+			return mScheduleIndex;
+		}
+	}
+
+	/**
+	 * Get the shared repository.
+	 * @return repository
+	 */
+	public static VenueRepository getInstance() {
+		return sInstance;
+	}
+
+	private VenueRepository() {
+	}
+
+	/**
+	 * @return current data, never null
+	 */
+	public Snapshot getSnapshot() {
+		return mSnapshot.get();
+	}
+
+	/**
+	 * Look up a venue in the current data.
+	 * @param id venue id
+	 * @return venue, or null if not loaded
+	 */
+	public Venue getVenue(long id) {
+		return mSnapshot.get().getVenue(id);
+	}
+
+	/**
+	 * Replace the current data.
+	 * @param snapshot next version
+	 */
+	public void publish(Snapshot snapshot) {
+		mSnapshot.set(snapshot);
+		for (OnPublishListener listener : mListeners) {
+			listener.onPublish(snapshot);
+		}
+	}
+
+	/**
+	 * Listen for new data, e.g. to find a venue not loaded yet.
+	 * @param listener listener, may remove itself when called
+	 */
+	public void addOnPublishListener(OnPublishListener listener) {
+		mListeners.add(listener);
+	}
+
+	/**
+	 * Stop listening for new data.
+	 * @param listener listener added before, or one never added
+	 */
+	public void removeOnPublishListener(OnPublishListener listener) {
+		mListeners.remove(listener);
+	}
+}
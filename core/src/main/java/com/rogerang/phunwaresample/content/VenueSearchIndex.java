@@ -0,0 +1,169 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable prefix search index over venue name, address, city, state and zip.
+ *
+ * Text is split into lower case letter/digit tokens.  The distinct tokens are
+ * kept sorted, each with the ascending list of venues it occurs in, so all
+ * tokens starting with a prefix are one contiguous range found by binary
+ * search.  A query matches venues that have a token starting with each word
+ * of the query.
+ */
+public class VenueSearchIndex {
+	private final Venue[] mVenues;
+	private final String[] mTokens;   // sorted
+	private final int[][] mPostings;  // venue indexes per token, ascending
+
+	/**
+	 * Build index.
+	 * @param venues venues to index, results keep this order
+	 */
+	public VenueSearchIndex(List<Venue> venues) {
+		mVenues = venues.toArray(new Venue[venues.size()]);
+
+		Map<String, IntList> postings = new HashMap<String, IntList>();
+		List<String> tokens = new ArrayList<String>();
+		for (int i = 0; i < mVenues.length; i++) {
+			Venue venue = mVenues[i];
+			tokens.clear();
+			tokenize(venue.getName(), tokens);
+			tokenize(venue.getAddress(), tokens);
+			tokenize(venue.getCity(), tokens);
+			tokenize(venue.getState(), tokens);
+			tokenize(venue.getZip(), tokens);
+
+			for (String token : tokens) {
+				IntList list = postings.get(token);
+				if (list == null) {
+					list = new IntList();
+					postings.put(token, list);
+				}
+				// venues are visited in order, so only the last entry can repeat
+				if (list.size == 0 || list.values[list.size - 1] != i) {
+					list.add(i);
+				}
+			}
+		}
+
+		mTokens = postings.keySet().toArray(new String[postings.size()]);
+		Arrays.sort(mTokens);
+		mPostings = new int[mTokens.length][];
+		for (int i = 0; i < mTokens.length; i++) {
+			mPostings[i] = postings.get(mTokens[i]).toArray();
+		}
+	}
+
+	/**
+	 * @return number of venues indexed
+	 */
+	public int size() {
+		return mVenues.length;
+	}
+
+	/**
+	 * Find venues matching type-ahead text.
+	 * @param query words to match, each as a prefix of some token of the venue
+	 * @return matching venues in index order, all venues if query has no words
+	 */
+	public List<Venue> search(CharSequence query) {
+		List<String> words = new ArrayList<String>();
+		tokenize(query, words);
+		if (words.isEmpty()) {
+			return new ArrayList<Venue>(Arrays.asList(mVenues));
+		}
+
+		// hits[v] counts the query words venue v has matched so far, in order,
+		// so a venue that missed a word can never catch up
+		int[] hits = new int[mVenues.length];
+		int matched = 0;
+		for (int w = 0; w < words.size(); w++) {
+			String word = words.get(w);
+			int from = lowerBound(word);
+			int to = lowerBound(word + Character.MAX_VALUE);
+			matched = 0;
+			for (int t = from; t < to; t++) {
+				for (int v : mPostings[t]) {
+					if (hits[v] == w) {
+						hits[v] = w + 1;
+						matched++;
+					}
+				}
+			}
+			if (matched == 0) {
+				return new ArrayList<Venue>();
+			}
+		}
+
+		List<Venue> result = new ArrayList<Venue>(matched);
+		for (int v = 0; v < hits.length; v++) {
+			if (hits[v] == words.size()) {
+				result.add(mVenues[v]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return index of first token not less than key
+	 */
+	private int lowerBound(String key) {
+		int lo = 0, hi = mTokens.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (mTokens[mid].compareTo(key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Split text into lower case runs of letters and digits.
+	 * @param text text, may be null
+	 * @param tokens list to add tokens to
+	 */
+	static void tokenize(CharSequence text, List<String> tokens) {
+		if (text == null) {
+			return;
+		}
+
+		int length = text.length();
+		StringBuilder token = new StringBuilder();
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? text.charAt(i) : ' ';
+			if (Character.isLetterOrDigit(c)) {
+				token.append(Character.toLowerCase(c));
+			} else if (token.length() > 0) {
+				tokens.add(token.toString());
+				token.setLength(0);
+			}
+		}
+	}
+
+	/**
+	 * Growable int array for building postings.
+	 */
+	private static class IntList {
+		int[] values = new int[4];
+		int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
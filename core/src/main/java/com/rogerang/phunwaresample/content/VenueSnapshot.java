@@ -0,0 +1,229 @@
+package com.rogerang.phunwaresample.content;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary copy of the parsed venue feed, so a cold start with an
+ * unchanged feed can skip JSON parsing.
+ *
+ * Layout, all big endian:
+ * <pre>
+ * int magic, int version
+ * long feed length, long feed last modified   (identifies the JSON it came from)
+ * int venue count
+ * per venue:
+ *   long id, int pcode, double latitude, double longitude
+ *   strings: name, address, city, state, zip, phone, toll free phone,
+ *            url, description, ticket link, image url
+ *   int schedule count (-1 for none), then long start, long end per item
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes.
+ * Missing dates are {@link ScheduleItem#NO_DATE}.
+ */
+public class VenueSnapshot {
+	private static final int MAGIC = 0x564e5553; // "VNUS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+	private static final int MIN_VENUE_SIZE = 8 + 4 + 8 + 8 + 11 * 4 + 4;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private VenueSnapshot() {
+	}
+
+	/**
+	 * Read a snapshot if it was written from the current feed file.
+	 * @param snapshotFile snapshot to read
+	 * @param feedFile JSON feed the snapshot must match
+	 * @return venues, or null if the snapshot is missing, stale or unreadable
+	 */
+	public static List<Venue> read(File snapshotFile, File feedFile) {
+		if (!snapshotFile.isFile() || !feedFile.isFile()) {
+			return null;
+		}
+
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(snapshotFile);
+			FileChannel channel = inputStream.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+					|| buffer.getLong() != feedFile.length()
+					|| buffer.getLong() != feedFile.lastModified()) {
+				return null;
+			}
+
+			SnapshotReader reader = new SnapshotReader(buffer);
+			int count = buffer.getInt();
+			if (count < 0 || count > buffer.remaining() / MIN_VENUE_SIZE) {
+				return null;
+			}
+			List<Venue> venues = new ArrayList<Venue>(count);
+			for (int i = 0; i < count; i++) {
+				Venue venue = new Venue();
+				venue.setId(buffer.getLong());
+				venue.setPcode(buffer.getInt());
+				venue.setLatitude(buffer.getDouble());
+				venue.setLongitude(buffer.getDouble());
+
+				venue.setName(reader.getString());
+				venue.setAddress(reader.getString());
+				venue.setCity(reader.getString());
+				venue.setState(reader.getString());
+				venue.setZip(reader.getString());
+				venue.setPhone(reader.getString());
+				venue.setTollFreePhone(reader.getString());
+				venue.setUrl(reader.getString());
+				venue.setDescription(reader.getString());
+				venue.setTicketLink(reader.getString());
+				venue.setImageUrl(reader.getString());
+
+				int scheduleCount = buffer.getInt();
+				if (scheduleCount > buffer.remaining() / 16) {
+					throw new IllegalArgumentException("Bad schedule count " + scheduleCount);
+				}
+				if (scheduleCount >= 0) {
+					List<ScheduleItem> schedule = new ArrayList<ScheduleItem>(scheduleCount);
+					for (int j = 0; j < scheduleCount; j++) {
+						schedule.add(new ScheduleItem(buffer.getLong(), buffer.getLong()));
+					}
+					venue.setSchedule(schedule);
+				}
+				venues.add(venue);
+			}
+			return venues;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (BufferUnderflowException e) {
+			// truncated file
+			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			// corrupt lengths
+			e.printStackTrace();
+		} finally {
+			try {
+				if (inputStream != null)
+					inputStream.close();
+			} catch (IOException squish) {
+				squish.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Write a snapshot of venues parsed from a feed file.  Written to a temp
+	 * file first, so a failed write leaves no snapshot rather than a bad one.
+	 * @param snapshotFile snapshot to write
+	 * @param feedFile JSON feed the venues were parsed from
+	 * @param venues
+	 * @throws IOException
+	 */
+	public static void write(File snapshotFile, File feedFile, List<Venue> venues) throws IOException {
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 16 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(feedFile.length());
+			out.writeLong(feedFile.lastModified());
+
+			out.writeInt(venues.size());
+			for (Venue venue : venues) {
+				out.writeLong(venue.getId());
+				out.writeInt(venue.getPcode());
+				out.writeDouble(venue.getLatitude());
+				out.writeDouble(venue.getLongitude());
+
+				putString(out, venue.getName());
+				putString(out, venue.getAddress());
+				putString(out, venue.getCity());
+				putString(out, venue.getState());
+				putString(out, venue.getZip());
+				putString(out, venue.getPhone());
+				putString(out, venue.getTollFreePhone());
+				putString(out, venue.getUrl());
+				putString(out, venue.getDescription());
+				putString(out, venue.getTicketLink());
+				putString(out, venue.getImageUrl());
+
+				List<ScheduleItem> schedule = venue.getSchedule();
+				if (schedule == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(schedule.size());
+					for (ScheduleItem item : schedule) {
+						out.writeLong(item.getStartTime());
+						out.writeLong(item.getEndTime());
+					}
+				}
+			}
+			out.close();
+			out = null;
+
+			if (!tempFile.renameTo(snapshotFile)) {
+				throw new IOException("Unable to replace " + snapshotFile);
+			}
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException squish) {
+					squish.printStackTrace();
+				}
+			}
+			tempFile.delete();
+		}
+	}
+
+	private static void putString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads strings from the snapshot, reusing one scratch array.
+	 */
+	private static class SnapshotReader {
+		private final ByteBuffer mBuffer;
+		private byte[] mScratch = new byte[256];
+
+		SnapshotReader(ByteBuffer buffer) {
+			mBuffer = buffer;
+		}
+
+		String getString() {
+			int length = mBuffer.getInt();
+			if (length < 0) {
+				return null;
+			}
+			if (length > mBuffer.remaining()) {
+				throw new IllegalArgumentException("Bad string length " + length);
+			}
+			if (length > mScratch.length) {
+				mScratch = new byte[length];
+			}
+			mBuffer.get(mScratch, 0, length);
+			return new String(mScratch, 0, length, UTF8);
+		}
+	}
+}
@@ -0,0 +1,373 @@
+package com.rogerang.phunwaresample.content;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable spatial index of venues for nearest and radius queries.
+ *
+ * Venues are stored as points on the unit sphere in a k-d tree, so straight
+ * line (chord) distance orders venues the same as great circle distance and
+ * there are no problems at the poles or the date line.  The tree is implicit:
+ * each subrange of the arrays has its splitting venue at the middle.
+ */
+public class VenueSpatialIndex {
+	/** Mean earth radius in meters */
+	public static final double EARTH_RADIUS = 6371008.8;
+
+	private final Venue[] mVenues;
+	private final double[] mX;
+	private final double[] mY;
+	private final double[] mZ;
+	private final byte[] mAxis; // split axis of the node at each middle index
+
+	/**
+	 * Build index.  O(n log n).
+	 * @param venues venues to index
+	 */
+	public VenueSpatialIndex(Collection<Venue> venues) {
+		int n = venues.size();
+		mVenues = venues.toArray(new Venue[n]);
+		mX = new double[n];
+		mY = new double[n];
+		mZ = new double[n];
+		mAxis = new byte[n];
+
+		for (int i = 0; i < n; i++) {
+			double lat = Math.toRadians(mVenues[i].getLatitude());
+			double lon = Math.toRadians(mVenues[i].getLongitude());
+			double cosLat = Math.cos(lat);
+			mX[i] = cosLat * Math.cos(lon);
+			mY[i] = cosLat * Math.sin(lon);
+			mZ[i] = Math.sin(lat);
+		}
+		build(0, n);
+	}
+
+	/**
+	 * @return number of venues indexed
+	 */
+	public int size() {
+		return mVenues.length;
+	}
+
+	/**
+	 * Find the nearest venues to a location.  With k of {@link #size()} this
+	 * lists every venue by proximity, without touching the shared venues.
+	 * @param latitude degrees
+	 * @param longitude degrees
+	 * @param k maximum number of venues to return
+	 * @return up to k venues, nearest first, in a new list
+	 */
+	public List<Venue> nearest(double latitude, double longitude, int k) {
+		k = Math.min(k, mVenues.length);
+		List<Venue> result = new ArrayList<Venue>(Math.max(k, 0));
+		if (k <= 0) {
+			return result;
+		}
+
+		Query query = new Query(latitude, longitude);
+		NearestHeap heap = new NearestHeap(k);
+		nearest(query, heap, 0, mVenues.length);
+
+		int[] order = heap.sortedIndexes();
+		for (int index : order) {
+			result.add(mVenues[index]);
+		}
+		return result;
+	}
+
+	/**
+	 * Find all venues within a distance of a location.
+	 * @param latitude degrees
+	 * @param longitude degrees
+	 * @param meters search radius
+	 * @return venues within radius, in no particular order
+	 */
+	public List<Venue> withinRadius(double latitude, double longitude, double meters) {
+		List<Venue> result = new ArrayList<Venue>();
+		if (meters < 0) {
+			return result;
+		}
+
+		// radius as chord length on the unit sphere
+		double angle = Math.min(meters / EARTH_RADIUS, Math.PI);
+		double chord = 2 * Math.sin(angle / 2);
+		within(new Query(latitude, longitude), chord * chord, result, 0, mVenues.length);
+		return result;
+	}
+
+	/**
+	 * Distance between two locations.
+	 * @return great circle distance in meters
+	 */
+	public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+		double lat1 = Math.toRadians(latitude1), lat2 = Math.toRadians(latitude2);
+		double dlon = Math.toRadians(longitude2 - longitude1);
+		double dx = Math.cos(lat1) - Math.cos(lat2) * Math.cos(dlon);
+		double dy = Math.cos(lat2) * Math.sin(dlon);
+		double dz = Math.sin(lat1) - Math.sin(lat2);
+		return toMeters(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Convert squared chord distance on the unit sphere to meters.
+	 */
+	private static double toMeters(double chordSquared) {
+		double halfChord = Math.min(Math.sqrt(chordSquared) / 2, 1.0);
+		return 2 * EARTH_RADIUS * Math.asin(halfChord);
+	}
+
+	private double coordinate(int axis, int i) {
+		switch (axis) {
+		case 0:
+			return mX[i];
+		case 1:
+			return mY[i];
+		default:
+			return mZ[i];
+		}
+	}
+
+	/**
+	 * Recursively build the tree over [lo, hi), splitting on the widest axis.
+	 */
+	private void build(int lo, int hi) {
+		if (hi - lo <= 1) {
+			return;
+		}
+
+		int axis = widestAxis(lo, hi);
+		int mid = (lo + hi) >>> 1;
+		select(axis, lo, hi - 1, mid);
+		mAxis[mid] = (byte) axis;
+
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	private int widestAxis(int lo, int hi) {
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+		for (int i = lo; i < hi; i++) {
+			minX = Math.min(minX, mX[i]);
+			maxX = Math.max(maxX, mX[i]);
+			minY = Math.min(minY, mY[i]);
+			maxY = Math.max(maxY, mY[i]);
+			minZ = Math.min(minZ, mZ[i]);
+			maxZ = Math.max(maxZ, mZ[i]);
+		}
+		double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+		return dx >= dy && dx >= dz ? 0 : (dy >= dz ? 1 : 2);
+	}
+
+	/**
+	 * Quickselect so index k holds the median along axis in [left, right].
+	 * Three way partitioning keeps venues sharing a location from going quadratic.
+	 */
+	private void select(int axis, int left, int right, int k) {
+		while (right > left) {
+			double pivot = coordinate(axis, (left + right) >>> 1);
+			int lt = left, i = left, gt = right;
+			while (i <= gt) {
+				double value = coordinate(axis, i);
+				if (value < pivot) {
+					swap(lt++, i++);
+				} else if (value > pivot) {
+					swap(i, gt--);
+				} else {
+					i++;
+				}
+			}
+
+			if (k < lt) {
+				right = lt - 1;
+			} else if (k > gt) {
+				left = gt + 1;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swap(int i, int j) {
+		Venue venue = mVenues[i];
+		mVenues[i] = mVenues[j];
+		mVenues[j] = venue;
+		double t = mX[i];
+		mX[i] = mX[j];
+		mX[j] = t;
+		t = mY[i];
+		mY[i] = mY[j];
+		mY[j] = t;
+		t = mZ[i];
+		mZ[i] = mZ[j];
+		mZ[j] = t;
+	}
+
+	private void nearest(Query query, NearestHeap heap, int lo, int hi) {
+		if (lo >= hi) {
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		heap.offer(mid, query.distanceSquared(mid));
+
+		if (hi - lo == 1) {
+			return;
+		}
+		int axis = mAxis[mid];
+		double diff = query.coordinate(axis) - coordinate(axis, mid);
+
+		// nearer side first, the far side only if it could hold something closer
+		if (diff < 0) {
+			nearest(query, heap, lo, mid);
+			if (diff * diff < heap.worst()) {
+				nearest(query, heap, mid + 1, hi);
+			}
+		} else {
+			nearest(query, heap, mid + 1, hi);
+			if (diff * diff < heap.worst()) {
+				nearest(query, heap, lo, mid);
+			}
+		}
+	}
+
+	private void within(Query query, double chordSquared, List<Venue> result, int lo, int hi) {
+		if (lo >= hi) {
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		if (query.distanceSquared(mid) <= chordSquared) {
+			result.add(mVenues[mid]);
+		}
+
+		if (hi - lo == 1) {
+			return;
+		}
+		int axis = mAxis[mid];
+		double diff = query.coordinate(axis) - coordinate(axis, mid);
+		if (diff < 0 || diff * diff <= chordSquared) {
+			within(query, chordSquared, result, lo, mid);
+		}
+		if (diff >= 0 || diff * diff <= chordSquared) {
+			within(query, chordSquared, result, mid + 1, hi);
+		}
+	}
+
+	/**
+	 * Query location on the unit sphere.
+	 */
+	private class Query {
+		final double x, y, z;
+
+		Query(double latitude, double longitude) {
+			double lat = Math.toRadians(latitude);
+			double lon = Math.toRadians(longitude);
+			double cosLat = Math.cos(lat);
+			x = cosLat * Math.cos(lon);
+			y = cosLat * Math.sin(lon);
+			z = Math.sin(lat);
+		}
+
+		double coordinate(int axis) {
+			return axis == 0 ? x : (axis == 1 ? y : z);
+		}
+
+		double distanceSquared(int i) {
+			double dx = x - mX[i], dy = y - mY[i], dz = z - mZ[i];
+			return dx * dx + dy * dy + dz * dz;
+		}
+	}
+
+	/**
+	 * Bounded max-heap of the k nearest venue indexes seen so far.
+	 */
+	private static class NearestHeap {
+		private final int[] mIndexes;
+		private final double[] mDistances;
+		private int mSize;
+
+		NearestHeap(int k) {
+			mIndexes = new int[k];
+			mDistances = new double[k];
+		}
+
+		/**
+		 * @return distance a venue must beat to be added
+		 */
+		double worst() {
+			return mSize < mIndexes.length ? Double.POSITIVE_INFINITY : mDistances[0];
+		}
+
+		void offer(int index, double distance) {
+			if (mSize < mIndexes.length) {
+				mIndexes[mSize] = index;
+				mDistances[mSize] = distance;
+				siftUp(mSize++);
+			} else if (distance < mDistances[0]) {
+				mIndexes[0] = index;
+				mDistances[0] = distance;
+				siftDown(0);
+			}
+		}
+
+		/**
+		 * Empty the heap.
+		 * @return indexes nearest first
+		 */
+		int[] sortedIndexes() {
+			int[] result = new int[mSize];
+			for (int i = mSize - 1; i >= 0; i--) {
+				result[i] = mIndexes[0];
+				mSize--;
+				set(0, mIndexes[mSize], mDistances[mSize]);
+				siftDown(0);
+			}
+			return result;
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (mDistances[parent] >= mDistances[i]) {
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int largest = i;
+				int left = 2 * i + 1, right = left + 1;
+				if (left < mSize && mDistances[left] > mDistances[largest]) {
+					largest = left;
+				}
+				if (right < mSize && mDistances[right] > mDistances[largest]) {
+					largest = right;
+				}
+				if (largest == i) {
+					return;
+				}
+				swap(i, largest);
+				i = largest;
+			}
+		}
+
+		private void set(int i, int index, double distance) {
+			mIndexes[i] = index;
+			mDistances[i] = distance;
+		}
+
+		private void swap(int i, int j) {
+			int index = mIndexes[i];
+			double distance = mDistances[i];
+			set(i, mIndexes[j], mDistances[j]);
+			set(j, index, distance);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CancellationToken}.
+ */
+public class CancellationTokenTest {
+	private static class CountingListener implements Runnable {
+		final AtomicInteger mCount = new AtomicInteger();
+
+		@Override
+		public void run() {
+			mCount.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void cancelRunsListenerOnce() {
+		CancellationToken token = new CancellationToken();
+		CountingListener listener = new CountingListener();
+		token.setOnCancelListener(listener);
+		assertFalse(token.isCanceled());
+
+		token.cancel();
+		token.cancel();
+		assertTrue(token.isCanceled());
+		assertEquals(1, listener.mCount.get());
+	}
+
+	@Test
+	public void listenerSetAfterCancelRunsAtOnce() {
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		CountingListener listener = new CountingListener();
+		token.setOnCancelListener(listener);
+		assertEquals(1, listener.mCount.get());
+	}
+
+	@Test
+	public void clearedListenerDoesNotRun() {
+		CancellationToken token = new CancellationToken();
+		CountingListener listener = new CountingListener();
+		token.setOnCancelListener(listener);
+		token.setOnCancelListener(null);
+		token.cancel();
+		assertEquals(0, listener.mCount.get());
+	}
+
+	@Test
+	public void listenerRunsOnExecutor() {
+		final List<Runnable> queued = new ArrayList<Runnable>();
+		CancellationToken token = new CancellationToken(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				queued.add(command);
+			}
+		});
+		CountingListener listener = new CountingListener();
+		token.setOnCancelListener(listener);
+
+		token.cancel();
+		assertTrue(token.isCanceled());
+		assertEquals(0, listener.mCount.get());
+		assertEquals(1, queued.size());
+		queued.get(0).run();
+		assertEquals(1, listener.mCount.get());
+	}
+
+	@Test
+	public void nullTokenIsNeverCanceled() throws LoadCanceledException {
+		CancellationToken.throwIfCanceled(null);
+		CancellationToken.setOnCancelListener(null, new CountingListener());
+	}
+
+	@Test(expected = LoadCanceledException.class)
+	public void throwIfCanceled() throws LoadCanceledException {
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		CancellationToken.throwIfCanceled(token);
+	}
+}
@@ -0,0 +1,128 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LongVenueMap}, checked against a HashMap.
+ */
+public class LongVenueMapTest {
+	private static Venue venue(long id) {
+		Venue venue = new Venue();
+		venue.setId(id);
+		return venue;
+	}
+
+	private static List<Venue> venues(long... ids) {
+		List<Venue> venues = new ArrayList<Venue>();
+		for (long id : ids) {
+			venues.add(venue(id));
+		}
+		return venues;
+	}
+
+	/**
+	 * Every venue is found by its id, and none of the misses are.
+	 */
+	private static void assertMatches(List<Venue> venues, long... misses) {
+		Map<Long, Venue> expected = new HashMap<Long, Venue>();
+		for (Venue venue : venues) {
+			expected.put(venue.getId(), venue);
+		}
+
+		LongVenueMap map = new LongVenueMap(venues);
+		assertEquals(expected.size(), map.size());
+		for (Map.Entry<Long, Venue> entry : expected.entrySet()) {
+			assertSame(entry.getValue(), map.get(entry.getKey()));
+			assertTrue(map.containsKey(entry.getKey()));
+		}
+		for (long miss : misses) {
+			assertNull(map.get(miss));
+			assertFalse(map.containsKey(miss));
+		}
+	}
+
+	@Test
+	public void getHitAndMiss() {
+		assertMatches(venues(1, 2, 3, 100), 4, 99, 101, Long.MAX_VALUE);
+	}
+
+	@Test
+	public void empty() {
+		LongVenueMap map = new LongVenueMap(new ArrayList<Venue>());
+		assertEquals(0, map.size());
+		assertNull(map.get(0));
+		assertNull(map.get(1));
+	}
+
+	@Test
+	public void zeroId() {
+		// 0 is the default key of an empty slot
+		assertMatches(venues(0), 1, -1);
+		assertMatches(venues(1, 2, 3), 0);
+		assertMatches(venues(5, 0, 7), 1, 6);
+	}
+
+	@Test
+	public void negativeIds() {
+		assertMatches(venues(-1, -2, Long.MIN_VALUE, -1000000000000L, 3), 1, 2, -3, Long.MIN_VALUE + 1);
+	}
+
+	@Test
+	public void laterVenueReplacesSameId() {
+		List<Venue> venues = venues(1, 2, 3);
+		Venue replacement = venue(2);
+		venues.add(replacement);
+		LongVenueMap map = new LongVenueMap(venues);
+		assertEquals(3, map.size());
+		assertSame(replacement, map.get(2));
+	}
+
+	@Test
+	public void growth() {
+		// every size across several doublings of the table
+		List<Venue> venues = new ArrayList<Venue>();
+		for (long id = 0; id < 300; id++) {
+			assertMatches(venues, id, -id - 1, id + 1000);
+			venues.add(venue(id * 7919));
+		}
+	}
+
+	@Test
+	public void collisions() {
+		// ids sharing low bits, high bits or only differing in sign
+		List<Venue> venues = new ArrayList<Venue>();
+		for (int i = 0; i < 64; i++) {
+			venues.add(venue(1L << i));
+			venues.add(venue(i << 20));
+			venues.add(venue(((long) i << 40) | 5));
+			venues.add(venue(-(i << 20) - 1));
+		}
+		assertMatches(venues, 3, 1L << 20 | 1, 7L << 40, -2);
+
+		// random ids, filling the table up to its load limit
+		Random random = new Random(15);
+		long[] ids = new long[4096];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = random.nextLong();
+		}
+		long[] misses = new long[1000];
+		for (int i = 0; i < misses.length; i++) {
+			misses[i] = random.nextLong();
+		}
+		assertMatches(venues(ids), misses);
+		assertMatches(venues(Arrays.copyOf(ids, 2048)), Arrays.copyOfRange(ids, 2048, 4096));
+	}
+}
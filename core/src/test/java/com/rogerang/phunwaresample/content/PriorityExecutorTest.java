@@ -0,0 +1,278 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PriorityExecutor}, on a single worker thread.
+ */
+public class PriorityExecutorTest {
+	private static final int FOREGROUND = 0;
+	private static final int NORMAL = 5;
+	private static final int BACKGROUND = 10;
+
+	private PriorityExecutor mExecutor;
+	private ExecutorService mCaller;
+
+	// the worker is busy with the blocking task / may finish it
+	private final CountDownLatch mBlocked = new CountDownLatch(1);
+	private final CountDownLatch mUnblock = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		mExecutor = new PriorityExecutor("test", 1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "PriorityExecutorTest");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mCaller = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		mUnblock.countDown();
+		mCaller.shutdownNow();
+	}
+
+	/**
+	 * Occupy the only worker until {@link #mUnblock} is released.
+	 */
+	private void blockWorker() throws InterruptedException {
+		mExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				mBlocked.countDown();
+				try {
+					mUnblock.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, BACKGROUND);
+		assertTrue(mBlocked.await(5, TimeUnit.SECONDS));
+	}
+
+	private void awaitQueueDepth(int depth) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (mExecutor.getQueueDepth() != depth) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("queue depth " + mExecutor.getQueueDepth() + ", expected " + depth);
+			}
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Invoke on the caller thread, so the test thread can cancel.
+	 */
+	private <T> Future<T> invokeLater(final Callable<T> callable, final int priority,
+			final CancellationToken cancellation) {
+		return mCaller.submit(new Callable<T>() {
+			@Override
+			public T call() throws IOException {
+				return mExecutor.invoke(callable, priority, cancellation);
+			}
+		});
+	}
+
+	@Test
+	public void queuedTasksRunByPriorityThenSubmission() throws InterruptedException {
+		blockWorker();
+
+		final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch done = new CountDownLatch(6);
+		String[] names = { "background 1", "foreground 1", "normal", "background 2", "foreground 2",
+				"background 3" };
+		int[] priorities = { BACKGROUND, FOREGROUND, NORMAL, BACKGROUND, FOREGROUND, BACKGROUND };
+		for (int i = 0; i < names.length; i++) {
+			final String name = names[i];
+			mExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					order.add(name);
+					done.countDown();
+				}
+			}, priorities[i]);
+		}
+		assertEquals(names.length, mExecutor.getQueueDepth());
+		assertEquals(1, mExecutor.getActiveCount());
+
+		mUnblock.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("foreground 1", "foreground 2", "normal", "background 1", "background 2",
+				"background 3"), order);
+	}
+
+	@Test
+	public void submitSurvivesExceptions() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		mExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("logged only");
+			}
+		}, FOREGROUND);
+		mExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		}, FOREGROUND);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void invokeReturnsResult() throws IOException {
+		assertEquals("result", mExecutor.invoke(new Callable<String>() {
+			@Override
+			public String call() {
+				return "result";
+			}
+		}, FOREGROUND, null));
+	}
+
+	@Test
+	public void invokePropagatesExceptions() {
+		final IOException ioException = new IOException("io");
+		try {
+			mExecutor.invoke(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					throw ioException;
+				}
+			}, FOREGROUND, null);
+			fail("expected IOException");
+		} catch (IOException e) {
+			assertSame(ioException, e);
+		}
+
+		final IllegalStateException runtimeException = new IllegalStateException("runtime");
+		try {
+			mExecutor.invoke(new Callable<Void>() {
+				@Override
+				public Void call() {
+					throw runtimeException;
+				}
+			}, FOREGROUND, null);
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertSame(runtimeException, e);
+		} catch (IOException e) {
+			fail("unexpected " + e);
+		}
+
+		final Exception checkedException = new Exception("checked");
+		try {
+			mExecutor.invoke(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					throw checkedException;
+				}
+			}, FOREGROUND, null);
+			fail("expected IOException");
+		} catch (IOException e) {
+			assertSame(checkedException, e.getCause());
+		}
+	}
+
+	@Test
+	public void invokeCanceledBeforeStartDoesNotRun() throws IOException {
+		CancellationToken cancellation = new CancellationToken();
+		cancellation.cancel();
+		final AtomicBoolean ran = new AtomicBoolean();
+		try {
+			mExecutor.invoke(new Callable<Void>() {
+				@Override
+				public Void call() {
+					ran.set(true);
+					return null;
+				}
+			}, FOREGROUND, cancellation);
+			fail("expected LoadCanceledException");
+		} catch (LoadCanceledException e) {
+			// expected
+		}
+		assertFalse(ran.get());
+	}
+
+	@Test
+	public void invokeCanceledWhileQueuedDoesNotRun() throws Exception {
+		blockWorker();
+
+		CancellationToken cancellation = new CancellationToken();
+		final AtomicBoolean ran = new AtomicBoolean();
+		Future<Void> result = invokeLater(new Callable<Void>() {
+			@Override
+			public Void call() {
+				ran.set(true);
+				return null;
+			}
+		}, FOREGROUND, cancellation);
+		awaitQueueDepth(1);
+
+		cancellation.cancel();
+		try {
+			result.get(5, TimeUnit.SECONDS);
+			fail("expected LoadCanceledException");
+		} catch (ExecutionException e) {
+			assertSame(LoadCanceledException.class, e.getCause().getClass());
+		}
+		assertEquals(0, mExecutor.getQueueDepth());
+
+		// the worker moves on to later work without running the canceled task
+		mUnblock.countDown();
+		assertEquals("next", mExecutor.invoke(new Callable<String>() {
+			@Override
+			public String call() {
+				return "next";
+			}
+		}, BACKGROUND, null));
+		assertFalse(ran.get());
+	}
+
+	@Test
+	public void invokeCanceledWhileRunningFinishes() throws Exception {
+		final CancellationToken cancellation = new CancellationToken();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch canceled = new CountDownLatch(1);
+		Future<String> result = invokeLater(new Callable<String>() {
+			@Override
+			public String call() throws InterruptedException {
+				started.countDown();
+				canceled.await();
+				// running work is left to check the token itself
+				return cancellation.isCanceled() ? "saw cancel" : "missed cancel";
+			}
+		}, FOREGROUND, cancellation);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		cancellation.cancel();
+		canceled.countDown();
+		assertEquals("saw cancel", result.get(5, TimeUnit.SECONDS));
+	}
+}
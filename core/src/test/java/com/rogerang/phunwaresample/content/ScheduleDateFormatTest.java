@@ -0,0 +1,83 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ScheduleDateFormat}, checked against SimpleDateFormat.
+ */
+public class ScheduleDateFormatTest {
+	private static final String[] ZONES = { "UTC", "America/Los_Angeles", "Asia/Kolkata", "Pacific/Chatham" };
+	private static final int SAMPLES = 20000;
+
+	// 1900 to 2100, whole seconds
+	private static long randomInstant(Random random) {
+		long min = -2208988800L, max = 4102444800L;
+		return (min + (long) (random.nextDouble() * (max - min))) * 1000L;
+	}
+
+	@Test
+	public void parseMatchesSimpleDateFormat() throws ParseException {
+		Random random = new Random(7);
+		for (String zone : ZONES) {
+			SimpleDateFormat reference = new SimpleDateFormat(ScheduleDateFormat.PATTERN);
+			reference.setTimeZone(TimeZone.getTimeZone(zone));
+			for (int i = 0; i < SAMPLES; i++) {
+				long millis = randomInstant(random);
+				String text = reference.format(millis);
+				assertEquals(text, reference.parse(text).getTime(), ScheduleDateFormat.parse(text));
+			}
+		}
+	}
+
+	@Test
+	public void formatMatchesSimpleDateFormat() throws ParseException {
+		// both use the default time zone
+		SimpleDateFormat reference = new SimpleDateFormat(ScheduleDateFormat.PATTERN);
+		Random random = new Random(11);
+		char[] buffer = new char[ScheduleDateFormat.LENGTH + 2];
+		for (int i = 0; i < SAMPLES; i++) {
+			long millis = randomInstant(random);
+			String text = ScheduleDateFormat.format(millis);
+			assertEquals(reference.format(millis), text);
+			assertEquals(millis, ScheduleDateFormat.parse(text));
+
+			ScheduleDateFormat.format(millis, buffer, 2);
+			assertEquals(text, new String(buffer, 2, ScheduleDateFormat.LENGTH));
+		}
+	}
+
+	@Test
+	public void outOfRangeYearIsNotWritten() {
+		char[] buffer = new char[ScheduleDateFormat.LENGTH];
+		long year10000 = 253402300800000L + 2 * 24 * 3600 * 1000L;
+		assertFalse(ScheduleDateFormat.format(year10000, buffer, 0));
+		assertEquals(new SimpleDateFormat(ScheduleDateFormat.PATTERN).format(year10000),
+				ScheduleDateFormat.format(year10000));
+	}
+
+	@Test
+	public void otherLayoutsFallBackToSimpleDateFormat() throws ParseException {
+		SimpleDateFormat reference = new SimpleDateFormat(ScheduleDateFormat.PATTERN);
+		String[] texts = {
+				"2015-1-31 18:00:00 -0800",     // short month
+				"2015-02-29 18:00:00 -0800",    // no such day, lenient rolls over
+				"2015-01-31 18:00:00 GMT-08:00" // other zone form
+		};
+		for (String text : texts) {
+			assertEquals(text, reference.parse(text).getTime(), ScheduleDateFormat.parse(text));
+		}
+	}
+
+	@Test(expected = ParseException.class)
+	public void rejectsNonDates() throws ParseException {
+		ScheduleDateFormat.parse("not a date");
+	}
+}
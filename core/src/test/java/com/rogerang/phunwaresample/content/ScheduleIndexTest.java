@@ -0,0 +1,163 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ScheduleIndex}, checked against a full scan.
+ */
+public class ScheduleIndexTest {
+	private static final long SPAN = 1000000;
+
+	/**
+	 * Venues with random schedules in a short span so items overlap a lot.
+	 * Some items miss a date or have their dates reversed.
+	 */
+	private static List<Venue> randomVenues(Random random, int count) {
+		List<Venue> venues = new ArrayList<Venue>();
+		for (int i = 0; i < count; i++) {
+			Venue venue = new Venue();
+			venue.setId(i);
+			if (i % 10 != 0) {
+				List<ScheduleItem> schedule = new ArrayList<ScheduleItem>();
+				int items = random.nextInt(6);
+				for (int j = 0; j < items; j++) {
+					long start = (long) (random.nextDouble() * SPAN);
+					long end = start + (long) (random.nextDouble() * SPAN / 20);
+					switch (random.nextInt(20)) {
+					case 0:
+						start = ScheduleItem.NO_DATE;
+						break;
+					case 1:
+						end = ScheduleItem.NO_DATE;
+						break;
+					case 2:
+						long t = start;
+						start = end;
+						end = t;
+						break;
+					case 3:
+						end = start;
+						break;
+					default:
+						break;
+					}
+					schedule.add(new ScheduleItem(start, end));
+				}
+				venue.setSchedule(schedule);
+			}
+			venues.add(venue);
+		}
+		return venues;
+	}
+
+	private static Map<ScheduleItem, Long> scan(List<Venue> venues, long from, long to) {
+		Map<ScheduleItem, Long> result = new IdentityHashMap<ScheduleItem, Long>();
+		for (Venue venue : venues) {
+			if (venue.getSchedule() == null) {
+				continue;
+			}
+			for (ScheduleItem item : venue.getSchedule()) {
+				long s = item.getStartTime(), e = item.getEndTime();
+				if (s == ScheduleItem.NO_DATE || e == ScheduleItem.NO_DATE) {
+					continue;
+				}
+				if (Math.min(s, e) <= to && Math.max(s, e) >= from) {
+					result.put(item, venue.getId());
+				}
+			}
+		}
+		return result;
+	}
+
+	private static void assertMatches(Map<ScheduleItem, Long> expected, List<ScheduleIndex.Match> matches) {
+		Map<ScheduleItem, Long> actual = new IdentityHashMap<ScheduleItem, Long>();
+		for (ScheduleIndex.Match match : matches) {
+			// no item twice
+			assertNull(actual.put(match.getItem(), match.getVenueId()));
+		}
+		// identity maps compare values by reference too, so check by hand
+		assertEquals(expected.size(), actual.size());
+		for (Map.Entry<ScheduleItem, Long> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), actual.get(entry.getKey()));
+		}
+	}
+
+	private static long randomTime(Random random, List<Venue> venues) {
+		if (random.nextInt(4) == 0) {
+			// exactly on an item boundary
+			Venue venue = venues.get(random.nextInt(venues.size()));
+			List<ScheduleItem> schedule = venue.getSchedule();
+			if (schedule != null && !schedule.isEmpty()) {
+				ScheduleItem item = schedule.get(random.nextInt(schedule.size()));
+				long t = random.nextBoolean() ? item.getStartTime() : item.getEndTime();
+				if (t != ScheduleItem.NO_DATE) {
+					return t;
+				}
+			}
+		}
+		return (long) ((random.nextDouble() * 1.2 - 0.1) * SPAN);
+	}
+
+	@Test
+	public void happeningAtMatchesScan() {
+		Random random = new Random(13);
+		List<Venue> venues = randomVenues(random, 12000);
+		ScheduleIndex index = new ScheduleIndex(venues);
+
+		for (int q = 0; q < 200; q++) {
+			long time = randomTime(random, venues);
+			assertMatches(scan(venues, time, time), index.happeningAt(time));
+		}
+	}
+
+	@Test
+	public void overlappingMatchesScan() {
+		Random random = new Random(17);
+		List<Venue> venues = randomVenues(random, 12000);
+		ScheduleIndex index = new ScheduleIndex(venues);
+
+		for (int q = 0; q < 200; q++) {
+			long from = randomTime(random, venues);
+			long to = q % 10 == 0 ? from : from + (long) (random.nextDouble() * SPAN / 10);
+			assertMatches(scan(venues, from, to), index.overlapping(from, to));
+		}
+		assertEquals(0, index.overlapping(10, 5).size());
+	}
+
+	@Test
+	public void skipsItemsMissingDates() {
+		Venue venue = new Venue();
+		venue.setId(4);
+		ScheduleItem complete = new ScheduleItem(100, 200);
+		List<ScheduleItem> schedule = new ArrayList<ScheduleItem>();
+		schedule.add(complete);
+		schedule.add(new ScheduleItem(ScheduleItem.NO_DATE, 150));
+		schedule.add(new ScheduleItem(120, ScheduleItem.NO_DATE));
+		venue.setSchedule(schedule);
+
+		ScheduleIndex index = new ScheduleIndex(Collections.singletonList(venue));
+		assertEquals(1, index.size());
+		List<ScheduleIndex.Match> matches = index.happeningAt(150);
+		assertEquals(1, matches.size());
+		assertEquals(4, matches.get(0).getVenueId());
+		assertEquals(complete, matches.get(0).getItem());
+	}
+
+	@Test
+	public void emptyIndex() {
+		ScheduleIndex index = new ScheduleIndex(Collections.<Venue> emptyList());
+		assertEquals(0, index.size());
+		assertEquals(0, index.happeningAt(0).size());
+		assertEquals(0, index.overlapping(0, 100).size());
+	}
+}
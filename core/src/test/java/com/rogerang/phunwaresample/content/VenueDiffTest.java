@@ -0,0 +1,144 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link VenueDiff}.
+ */
+public class VenueDiffTest {
+	private static Venue venue(long id, String name) {
+		Venue venue = new Venue();
+		venue.setId(id);
+		venue.setName(name);
+		venue.setLatitude(id);
+		venue.setLongitude(-id);
+		return venue;
+	}
+
+	/**
+	 * Venues 1 to count, freshly loaded, so none are the same instance
+	 * as in an earlier list.
+	 */
+	private static List<Venue> venues(int count) {
+		List<Venue> venues = new ArrayList<Venue>();
+		for (int i = 1; i <= count; i++) {
+			venues.add(venue(i, "Venue " + i));
+		}
+		return venues;
+	}
+
+	private static List<Long> ids(List<Venue> venues) {
+		List<Long> ids = new ArrayList<Long>();
+		for (Venue venue : venues) {
+			ids.add(venue.getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Every venue in the diff's list is the old instance, except the
+	 * venues with the given ids, which are the new ones.
+	 */
+	private static void assertReused(VenueDiff diff, List<Venue> oldVenues, List<Venue> newVenues,
+			Long... replacedIds) {
+		List<Long> replaced = Arrays.asList(replacedIds);
+		List<Venue> result = diff.getNewVenues();
+		assertEquals(ids(newVenues), ids(result));
+		for (int i = 0; i < result.size(); i++) {
+			Venue venue = result.get(i);
+			if (replaced.contains(venue.getId())) {
+				assertSame(newVenues.get(i), venue);
+			} else {
+				boolean found = false;
+				for (Venue oldVenue : oldVenues) {
+					found |= oldVenue == venue;
+				}
+				assertTrue("venue " + venue.getId() + " not reused", found);
+			}
+		}
+	}
+
+	@Test
+	public void unchangedReusesEveryVenue() {
+		List<Venue> oldVenues = venues(5);
+		List<Venue> newVenues = venues(5);
+		VenueDiff diff = VenueDiff.compute(oldVenues, newVenues);
+		assertTrue(diff.isEmpty());
+		assertReused(diff, oldVenues, newVenues);
+	}
+
+	@Test
+	public void remove() {
+		List<Venue> oldVenues = venues(5);
+		List<Venue> newVenues = venues(5);
+		newVenues.remove(4);
+		newVenues.remove(0);
+		VenueDiff diff = VenueDiff.compute(oldVenues, newVenues);
+		assertFalse(diff.isEmpty());
+		assertReused(diff, oldVenues, newVenues);
+	}
+
+	@Test
+	public void update() {
+		List<Venue> oldVenues = venues(5);
+		List<Venue> newVenues = venues(5);
+		newVenues.set(2, venue(3, "Renamed"));
+		VenueDiff diff = VenueDiff.compute(oldVenues, newVenues);
+		assertFalse(diff.isEmpty());
+		assertReused(diff, oldVenues, newVenues, 3L);
+		assertEquals("Renamed", diff.getNewVenues().get(2).getName());
+		assertNotSame(oldVenues.get(2), diff.getNewVenues().get(2));
+	}
+
+	@Test
+	public void insert() {
+		List<Venue> oldVenues = venues(5);
+		List<Venue> newVenues = venues(5);
+		newVenues.add(0, venue(10, "First"));
+		newVenues.add(3, venue(11, "Middle"));
+		newVenues.add(venue(12, "Last"));
+		VenueDiff diff = VenueDiff.compute(oldVenues, newVenues);
+		assertFalse(diff.isEmpty());
+		assertReused(diff, oldVenues, newVenues, 10L, 11L, 12L);
+	}
+
+	@Test
+	public void move() {
+		List<Venue> oldVenues = venues(5);
+		List<Venue> newVenues = venues(5);
+		newVenues.add(newVenues.remove(1));
+		VenueDiff diff = VenueDiff.compute(oldVenues, newVenues);
+		assertFalse(diff.isEmpty());
+		assertReused(diff, oldVenues, newVenues);
+	}
+
+	@Test
+	public void removeAndInsertOfSameCount() {
+		List<Venue> oldVenues = venues(5);
+		List<Venue> newVenues = venues(5);
+		newVenues.set(1, venue(20, "Replacement"));
+		VenueDiff diff = VenueDiff.compute(oldVenues, newVenues);
+		assertFalse(diff.isEmpty());
+		assertReused(diff, oldVenues, newVenues, 20L);
+	}
+
+	@Test
+	public void duplicateIdsAreNotMatched() {
+		List<Venue> venues = venues(3);
+		List<Venue> duplicated = venues(3);
+		duplicated.add(venue(2, "Venue 2"));
+		assertNull(VenueDiff.compute(duplicated, venues));
+		assertNull(VenueDiff.compute(venues, duplicated));
+	}
+}
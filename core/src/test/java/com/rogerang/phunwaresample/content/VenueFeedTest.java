@@ -0,0 +1,310 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for {@link VenueFeed} against a local HTTP server.
+ */
+public class VenueFeedTest {
+	private static final String BODY = "[{\"id\":1,\"name\":\"Stadium\"}]";
+	private static final String ETAG = "\"v1\"";
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private HttpServer mServer;
+	private String mBaseUrl;
+	private File mCacheFile;
+	private VenueFeed mFeed;
+
+	// the slow response has started its body / should stop
+	private final CountDownLatch mSlowStarted = new CountDownLatch(1);
+	private final CountDownLatch mSlowRelease = new CountDownLatch(1);
+
+	// what the server answers with, set by each test
+	private volatile int mStatus;
+	private volatile byte[] mBody;
+	private volatile boolean mGzip;
+	private volatile String mEtag;
+	private volatile String mLastModified;
+
+	// headers of the last request
+	private volatile Headers mRequestHeaders;
+
+	@Before
+	public void setUp() throws IOException {
+		mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		mServer.createContext("/feed", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				mRequestHeaders = exchange.getRequestHeaders();
+				Headers headers = exchange.getResponseHeaders();
+				if (mEtag != null)
+					headers.set("ETag", mEtag);
+				if (mLastModified != null)
+					headers.set("Last-Modified", mLastModified);
+				if (mGzip)
+					headers.set("Content-Encoding", "gzip");
+
+				if (mStatus == 304 || mBody == null) {
+					exchange.sendResponseHeaders(mStatus, -1);
+				} else {
+					exchange.sendResponseHeaders(mStatus, mBody.length);
+					OutputStream outputStream = exchange.getResponseBody();
+					outputStream.write(mBody);
+					outputStream.close();
+				}
+				exchange.close();
+			}
+		});
+		// a body that never ends, a chunk at a time
+		mServer.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				mRequestHeaders = exchange.getRequestHeaders();
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream outputStream = exchange.getResponseBody();
+				try {
+					do {
+						outputStream.write(new byte[1000]);
+						outputStream.flush();
+						mSlowStarted.countDown();
+					} while (!mSlowRelease.await(20, TimeUnit.MILLISECONDS));
+				} catch (IOException e) {
+					// client went away
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.close();
+			}
+		});
+		mServer.start();
+
+		mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+		mCacheFile = new File(mFolder.getRoot(), "venue_data.gz");
+		mFeed = new VenueFeed(mBaseUrl + "/feed", mCacheFile);
+	}
+
+	@After
+	public void tearDown() {
+		mSlowRelease.countDown();
+		mServer.stop(0);
+	}
+
+	private void respond(int status, byte[] body, String etag, String lastModified) {
+		mStatus = status;
+		mBody = body;
+		mEtag = etag;
+		mLastModified = lastModified;
+	}
+
+	@Test
+	public void notModifiedSendsValidatorsAndKeepsCache() throws IOException {
+		respond(200, BODY.getBytes("UTF-8"), ETAG, LAST_MODIFIED);
+		assertTrue(mFeed.refresh());
+		assertNull(mRequestHeaders.getFirst("If-None-Match"));
+		assertNull(mRequestHeaders.getFirst("If-Modified-Since"));
+		byte[] cached = readFile(mCacheFile);
+		long cachedModified = mCacheFile.lastModified();
+
+		respond(304, null, ETAG, LAST_MODIFIED);
+		assertFalse(mFeed.refresh());
+		assertEquals(ETAG, mRequestHeaders.getFirst("If-None-Match"));
+		assertEquals(LAST_MODIFIED, mRequestHeaders.getFirst("If-Modified-Since"));
+		assertArrayEquals(cached, readFile(mCacheFile));
+		assertEquals(cachedModified, mCacheFile.lastModified());
+		assertEquals(BODY, readCache());
+	}
+
+	@Test
+	public void modifiedReplacesCacheAndValidators() throws IOException {
+		respond(200, BODY.getBytes("UTF-8"), ETAG, LAST_MODIFIED);
+		assertTrue(mFeed.refresh());
+
+		String newBody = "[{\"id\":2,\"name\":\"Arena\"}]";
+		respond(200, newBody.getBytes("UTF-8"), "\"v2\"", null);
+		assertTrue(mFeed.refresh());
+		assertEquals(newBody, readCache());
+
+		respond(304, null, null, null);
+		assertFalse(mFeed.refresh());
+		assertEquals("\"v2\"", mRequestHeaders.getFirst("If-None-Match"));
+		assertNull(mRequestHeaders.getFirst("If-Modified-Since"));
+	}
+
+	@Test
+	public void withoutValidatorsUsesFileDate() throws IOException {
+		respond(200, BODY.getBytes("UTF-8"), null, null);
+		assertTrue(mFeed.refresh());
+
+		respond(304, null, null, null);
+		assertFalse(mFeed.refresh());
+		assertNull(mRequestHeaders.getFirst("If-None-Match"));
+		assertTrue(mRequestHeaders.getFirst("If-Modified-Since") != null);
+	}
+
+	@Test
+	public void plainResponseIsCompressedOnDisk() throws IOException {
+		respond(200, BODY.getBytes("UTF-8"), ETAG, null);
+		assertTrue(mFeed.refresh());
+		assertEquals("gzip", mRequestHeaders.getFirst("Accept-Encoding"));
+
+		byte[] cached = readFile(mCacheFile);
+		assertEquals((byte) 0x1f, cached[0]);
+		assertEquals((byte) 0x8b, cached[1]);
+		assertEquals(BODY, readCache());
+	}
+
+	@Test
+	public void gzipResponseIsStoredAsReceived() throws IOException {
+		byte[] gzipped = gzip(BODY.getBytes("UTF-8"));
+		mGzip = true;
+		respond(200, gzipped, ETAG, null);
+		assertTrue(mFeed.refresh());
+
+		assertArrayEquals(gzipped, readFile(mCacheFile));
+		assertEquals(BODY, readCache());
+	}
+
+	@Test
+	public void errorKeepsCache() throws IOException {
+		respond(200, BODY.getBytes("UTF-8"), ETAG, LAST_MODIFIED);
+		assertTrue(mFeed.refresh());
+		byte[] cached = readFile(mCacheFile);
+
+		respond(500, "oops".getBytes("UTF-8"), null, null);
+		try {
+			mFeed.refresh();
+			fail("expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		assertArrayEquals(cached, readFile(mCacheFile));
+		assertFalse(new File(mCacheFile.getPath() + ".tmp").exists());
+
+		// validators still describe the cache file
+		respond(304, null, null, null);
+		assertFalse(mFeed.refresh());
+		assertEquals(ETAG, mRequestHeaders.getFirst("If-None-Match"));
+	}
+
+	@Test
+	public void cancelAbortsTransfer() throws Exception {
+		final VenueFeed feed = new VenueFeed(mBaseUrl + "/slow", mCacheFile);
+		// the desktop JDK's disconnect() waits for a blocked read to return,
+		// keep it off the canceling thread as the app does
+		ExecutorService listenerExecutor = Executors.newSingleThreadExecutor();
+		final CancellationToken cancellation = new CancellationToken(listenerExecutor);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> result = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws IOException {
+					return feed.refresh(cancellation);
+				}
+			});
+			assertTrue(mSlowStarted.await(5, TimeUnit.SECONDS));
+			Thread.sleep(100);
+
+			cancellation.cancel();
+			try {
+				result.get(5, TimeUnit.SECONDS);
+				fail("expected LoadCanceledException");
+			} catch (ExecutionException e) {
+				assertSame(LoadCanceledException.class, e.getCause().getClass());
+			}
+		} finally {
+			executor.shutdownNow();
+			listenerExecutor.shutdownNow();
+		}
+
+		assertFalse(mCacheFile.exists());
+		assertFalse(new File(mCacheFile.getPath() + ".tmp").exists());
+		assertFalse(new File(mCacheFile.getPath() + ".meta").exists());
+	}
+
+	@Test
+	public void canceledBeforeStartSendsNoRequest() throws IOException {
+		CancellationToken cancellation = new CancellationToken();
+		cancellation.cancel();
+		respond(200, BODY.getBytes("UTF-8"), ETAG, null);
+		try {
+			mFeed.refresh(cancellation);
+			fail("expected LoadCanceledException");
+		} catch (LoadCanceledException e) {
+			// expected
+		}
+		assertNull(mRequestHeaders);
+		assertFalse(mCacheFile.exists());
+	}
+
+	private String readCache() throws IOException {
+		InputStream inputStream = mFeed.openCache();
+		try {
+			return new String(readFully(inputStream), "UTF-8");
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			return readFully(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = inputStream.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzipStream = new GZIPOutputStream(out);
+		gzipStream.write(data);
+		gzipStream.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,112 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link VenueParser}.
+ */
+public class VenueParserTest {
+	private final VenueParser mParser = new VenueParser();
+
+	private static String feed(int count) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append(',');
+			json.append("{\"id\":").append(i).append(",\"name\":\" Venue ").append(i).append(" \"}");
+		}
+		return json.append(']').toString();
+	}
+
+	@Test
+	public void parsesVenuesAndSchedule() throws IOException, ParseException {
+		String json = "[{\"id\":7,\"pcode\":3,\"latitude\":33.5,\"longitude\":-112.25,"
+				+ "\"name\":\" Stadium \",\"address\":\"1 Main St\",\"tollfreephone\":\"800\","
+				+ "\"image_url\":\"http://example.com/a.png\",\"schedule\":["
+				+ "{\"start_date\":\"2015-01-31 18:00:00 -0800\",\"end_date\":\"2015-01-31 21:00:00 -0800\"},"
+				+ "{\"start_date\":null,\"end_date\":\"2015-02-01 10:00:00 +0000\"}]},"
+				+ "null,"
+				+ "{\"id\":8}]";
+		List<Venue> venues = mParser.parse(new StringReader(json));
+
+		assertEquals(2, venues.size());
+		Venue venue = venues.get(0);
+		assertEquals(7, venue.getId());
+		assertEquals(3, venue.getPcode());
+		assertEquals(33.5, venue.getLatitude(), 0);
+		assertEquals(-112.25, venue.getLongitude(), 0);
+		assertEquals("Stadium", venue.getDisplayName());
+		assertEquals("800", venue.getTollFreePhone());
+		assertEquals("http://example.com/a.png", venue.getImageUrl());
+
+		List<ScheduleItem> schedule = venue.getSchedule();
+		assertEquals(2, schedule.size());
+		assertEquals(ScheduleDateFormat.parse("2015-01-31 18:00:00 -0800"), schedule.get(0).getStartTime());
+		assertEquals(ScheduleDateFormat.parse("2015-01-31 21:00:00 -0800"), schedule.get(0).getEndTime());
+		assertEquals(ScheduleItem.NO_DATE, schedule.get(1).getStartTime());
+
+		assertEquals(8, venues.get(1).getId());
+		assertNull(venues.get(1).getSchedule());
+	}
+
+	@Test
+	public void batchesHandOutVenuesInOrder() throws IOException {
+		final List<Venue> batched = new ArrayList<Venue>();
+		final List<Integer> sizes = new ArrayList<Integer>();
+		List<Venue> venues = mParser.parse(new StringReader(feed(1000)), new VenueParser.BatchListener() {
+			@Override
+			public void onBatch(List<Venue> batch, List<Venue> venues) {
+				batched.addAll(batch);
+				sizes.add(batch.size());
+				assertEquals(batched.size(), venues.size());
+			}
+		});
+
+		assertEquals(1000, venues.size());
+		assertEquals(32, (int) sizes.get(0));
+		assertEquals(64, (int) sizes.get(1));
+		for (int i = 0; i < batched.size(); i++) {
+			assertSame(venues.get(i), batched.get(i));
+		}
+	}
+
+	@Test
+	public void cancelStopsBetweenVenues() throws IOException {
+		final CancellationToken cancellation = new CancellationToken();
+		final List<Integer> sizes = new ArrayList<Integer>();
+		try {
+			mParser.parse(new StringReader(feed(1000)), new VenueParser.BatchListener() {
+				@Override
+				public void onBatch(List<Venue> batch, List<Venue> venues) {
+					sizes.add(venues.size());
+					cancellation.cancel();
+				}
+			}, cancellation);
+			fail("expected LoadCanceledException");
+		} catch (LoadCanceledException e) {
+			// expected
+		}
+
+		// stopped before the next venue, so no second batch
+		assertEquals(1, sizes.size());
+		assertEquals(32, (int) sizes.get(0));
+	}
+
+	@Test(expected = LoadCanceledException.class)
+	public void canceledBeforeParse() throws IOException {
+		CancellationToken cancellation = new CancellationToken();
+		cancellation.cancel();
+		mParser.parse(new StringReader(feed(10)), null, cancellation);
+	}
+}
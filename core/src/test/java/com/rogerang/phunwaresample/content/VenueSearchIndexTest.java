@@ -0,0 +1,178 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link VenueSearchIndex}, checked against a linear scan with
+ * String.startsWith.
+ */
+public class VenueSearchIndexTest {
+	private static final String[] WORDS = {
+		"Stadium", "Arena", "Field", "Park", "Center", "Centre", "Dome", "Bowl",
+		"Main", "Maple", "Market", "St", "Street", "Ave", "Blvd", "Phoenix",
+		"Glendale", "Green", "Bay", "Boston", "AZ", "WI", "MA", "85305", "02215",
+	};
+
+	private static String text(Random random, int words) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				// punctuation separates tokens too
+				text.append(random.nextBoolean() ? " " : ", ");
+			}
+			String word = WORDS[random.nextInt(WORDS.length)];
+			text.append(random.nextInt(4) == 0 ? word.toUpperCase(Locale.US) : word);
+		}
+		return text.toString();
+	}
+
+	private static List<Venue> randomVenues(Random random, int count) {
+		List<Venue> venues = new ArrayList<Venue>();
+		for (int i = 0; i < count; i++) {
+			Venue venue = new Venue();
+			venue.setId(i);
+			venue.setName(text(random, 1 + random.nextInt(3)));
+			venue.setAddress(random.nextInt(10) == 0 ? null : (i + 1) + " " + text(random, 2));
+			venue.setCity(text(random, 1));
+			venue.setState(text(random, 1));
+			venue.setZip(random.nextInt(10) == 0 ? null : text(random, 1));
+			venues.add(venue);
+		}
+		return venues;
+	}
+
+	/**
+	 * Lower case tokens of the searched fields, split on anything but
+	 * ASCII letters and digits, which is all the test data uses.
+	 */
+	private static List<String> tokens(Venue venue) {
+		List<String> tokens = new ArrayList<String>();
+		for (String field : new String[] { venue.getName(), venue.getAddress(), venue.getCity(),
+				venue.getState(), venue.getZip() }) {
+			if (field == null) {
+				continue;
+			}
+			for (String token : field.toLowerCase(Locale.US).split("[^a-z0-9]+")) {
+				if (!token.isEmpty()) {
+					tokens.add(token);
+				}
+			}
+		}
+		return tokens;
+	}
+
+	private static List<Venue> bruteForce(List<Venue> venues, String query) {
+		List<String> words = new ArrayList<String>();
+		for (String word : query.toLowerCase(Locale.US).split("[^a-z0-9]+")) {
+			if (!word.isEmpty()) {
+				words.add(word);
+			}
+		}
+
+		List<Venue> result = new ArrayList<Venue>();
+		for (Venue venue : venues) {
+			List<String> tokens = tokens(venue);
+			boolean matches = true;
+			for (String word : words) {
+				boolean found = false;
+				for (String token : tokens) {
+					found |= token.startsWith(word);
+				}
+				matches &= found;
+			}
+			if (matches) {
+				result.add(venue);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A random prefix of a random word, in random case.
+	 */
+	private static String prefix(Random random) {
+		String word = WORDS[random.nextInt(WORDS.length)];
+		String prefix = word.substring(0, 1 + random.nextInt(word.length()));
+		switch (random.nextInt(3)) {
+		case 0:
+			return prefix.toUpperCase(Locale.US);
+		case 1:
+			return prefix.toLowerCase(Locale.US);
+		default:
+			return prefix;
+		}
+	}
+
+	@Test
+	public void prefixMatchesBruteForce() {
+		Random random = new Random(10);
+		List<Venue> venues = randomVenues(random, 2000);
+		VenueSearchIndex index = new VenueSearchIndex(venues);
+		assertEquals(venues.size(), index.size());
+
+		for (int q = 0; q < 300; q++) {
+			String query = prefix(random);
+			assertEquals(query, bruteForce(venues, query), index.search(query));
+		}
+	}
+
+	@Test
+	public void wordsMatchBruteForce() {
+		Random random = new Random(11);
+		List<Venue> venues = randomVenues(random, 2000);
+		VenueSearchIndex index = new VenueSearchIndex(venues);
+
+		for (int q = 0; q < 300; q++) {
+			String query = prefix(random) + (random.nextBoolean() ? " " : "-") + prefix(random);
+			if (random.nextBoolean()) {
+				query = "  " + query + ",";
+			}
+			assertEquals(query, bruteForce(venues, query), index.search(query));
+		}
+	}
+
+	@Test
+	public void caseFolding() {
+		Random random = new Random(12);
+		List<Venue> venues = randomVenues(random, 500);
+		VenueSearchIndex index = new VenueSearchIndex(venues);
+
+		List<Venue> lower = index.search("sta");
+		assertFalse(lower.isEmpty());
+		assertEquals(lower, index.search("STA"));
+		assertEquals(lower, index.search("sTa"));
+		assertEquals(bruteForce(venues, "sta"), lower);
+	}
+
+	@Test
+	public void emptyPrefixMatchesAll() {
+		Random random = new Random(13);
+		List<Venue> venues = randomVenues(random, 500);
+		VenueSearchIndex index = new VenueSearchIndex(venues);
+
+		assertEquals(venues, index.search(""));
+		assertEquals(venues, index.search("  ,- "));
+	}
+
+	@Test
+	public void prefixWithoutMatches() {
+		Random random = new Random(14);
+		List<Venue> venues = randomVenues(random, 500);
+		VenueSearchIndex index = new VenueSearchIndex(venues);
+
+		assertTrue(index.search("zzz").isEmpty());
+		assertTrue(index.search("stadiums").isEmpty());
+		assertTrue(index.search("Stadium zzz").isEmpty());
+		// past the last token in sort order
+		assertTrue(index.search("\u00ff\u00ff").isEmpty());
+	}
+}
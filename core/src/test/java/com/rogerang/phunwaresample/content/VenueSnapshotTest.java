@@ -0,0 +1,223 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link VenueSnapshot}.
+ */
+public class VenueSnapshotTest {
+	// offsets in a snapshot, see the layout in VenueSnapshot
+	private static final int VERSION_OFFSET = 4;
+	private static final int COUNT_OFFSET = 24;
+	private static final int FIRST_NAME_OFFSET = COUNT_OFFSET + 4 + 8 + 4 + 8 + 8;
+
+	private static final String[] TEXT = {
+		"Stadium", "Arena", "", " padded ", "Caf\u00e9", "Z\u00fcrich Hallenstadion", "\u6771\u4eac\u30c9\u30fc\u30e0",
+		"\ud834\udd1e clef", "line\nbreak", "tab\tseparated", "quote \" and \\",
+	};
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private File mSnapshotFile;
+	private File mFeedFile;
+
+	@Before
+	public void setUp() throws IOException {
+		mSnapshotFile = new File(mFolder.getRoot(), "venue_data.snapshot");
+		mFeedFile = new File(mFolder.getRoot(), "venue_data.gz");
+		writeFile(mFeedFile, new byte[1234]);
+		assertTrue(mFeedFile.setLastModified(1420070400000L));
+	}
+
+	private static String text(Random random) {
+		if (random.nextInt(8) == 0) {
+			return null;
+		}
+		return TEXT[random.nextInt(TEXT.length)] + " " + random.nextInt(1000);
+	}
+
+	private static List<Venue> randomVenues(Random random, int count) {
+		List<Venue> venues = new ArrayList<Venue>();
+		for (int i = 0; i < count; i++) {
+			Venue venue = new Venue();
+			venue.setId(random.nextInt(4) == 0 ? random.nextLong() : i);
+			venue.setPcode(random.nextInt());
+			venue.setLatitude(random.nextDouble() * 180 - 90);
+			venue.setLongitude(random.nextDouble() * 360 - 180);
+			venue.setName(text(random));
+			venue.setAddress(text(random));
+			venue.setCity(text(random));
+			venue.setState(text(random));
+			venue.setZip(text(random));
+			venue.setPhone(text(random));
+			venue.setTollFreePhone(text(random));
+			venue.setUrl(text(random));
+			venue.setDescription(text(random));
+			venue.setTicketLink(text(random));
+			venue.setImageUrl(text(random));
+
+			int scheduleCount = random.nextInt(6) - 1;
+			if (scheduleCount >= 0) {
+				List<ScheduleItem> schedule = new ArrayList<ScheduleItem>();
+				for (int j = 0; j < scheduleCount; j++) {
+					long start = random.nextInt(5) == 0 ? ScheduleItem.NO_DATE : random.nextLong();
+					long end = random.nextInt(5) == 0 ? ScheduleItem.NO_DATE : random.nextLong();
+					schedule.add(new ScheduleItem(start, end));
+				}
+				venue.setSchedule(schedule);
+			}
+			venues.add(venue);
+		}
+
+		// extremes
+		Venue venue = new Venue();
+		venue.setId(Long.MIN_VALUE);
+		venue.setPcode(Integer.MAX_VALUE);
+		venue.setLatitude(-0.0);
+		venue.setLongitude(Double.MAX_VALUE);
+		venues.add(venue);
+		return venues;
+	}
+
+	private static void assertSameVenues(List<Venue> expected, List<Venue> actual) {
+		assertNotNull(actual);
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue("venue " + i, expected.get(i).hasSameContent(actual.get(i)));
+		}
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		List<Venue> venues = randomVenues(new Random(6), 2000);
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, venues);
+		assertFalse(new File(mSnapshotFile.getPath() + ".tmp").exists());
+		assertSameVenues(venues, VenueSnapshot.read(mSnapshotFile, mFeedFile));
+	}
+
+	@Test
+	public void roundTripEmpty() throws IOException {
+		List<Venue> venues = new ArrayList<Venue>();
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, venues);
+		assertSameVenues(venues, VenueSnapshot.read(mSnapshotFile, mFeedFile));
+	}
+
+	@Test
+	public void rewriteReplacesSnapshot() throws IOException {
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, randomVenues(new Random(1), 50));
+		List<Venue> venues = randomVenues(new Random(2), 20);
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, venues);
+		assertSameVenues(venues, VenueSnapshot.read(mSnapshotFile, mFeedFile));
+	}
+
+	@Test
+	public void missingFilesAreRejected() throws IOException {
+		assertNull(VenueSnapshot.read(mSnapshotFile, mFeedFile));
+
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, randomVenues(new Random(3), 10));
+		assertTrue(mFeedFile.delete());
+		assertNull(VenueSnapshot.read(mSnapshotFile, mFeedFile));
+	}
+
+	@Test
+	public void staleSnapshotIsRejected() throws IOException {
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, randomVenues(new Random(4), 10));
+		long lastModified = mFeedFile.lastModified();
+
+		// feed downloaded again, same size
+		assertTrue(mFeedFile.setLastModified(lastModified + 60000));
+		assertNull(VenueSnapshot.read(mSnapshotFile, mFeedFile));
+
+		// different size, same date
+		writeFile(mFeedFile, new byte[1235]);
+		assertTrue(mFeedFile.setLastModified(lastModified));
+		assertNull(VenueSnapshot.read(mSnapshotFile, mFeedFile));
+
+		// back as it was
+		writeFile(mFeedFile, new byte[1234]);
+		assertTrue(mFeedFile.setLastModified(lastModified));
+		assertNotNull(VenueSnapshot.read(mSnapshotFile, mFeedFile));
+	}
+
+	@Test
+	public void truncatedSnapshotIsRejected() throws IOException {
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, randomVenues(new Random(5), 20));
+		long length = mSnapshotFile.length();
+		for (long truncated = length - 1; truncated >= 0; truncated -= 7) {
+			RandomAccessFile file = new RandomAccessFile(mSnapshotFile, "rw");
+			try {
+				file.setLength(truncated);
+			} finally {
+				file.close();
+			}
+			assertNull("truncated to " + truncated, VenueSnapshot.read(mSnapshotFile, mFeedFile));
+		}
+	}
+
+	@Test
+	public void corruptSnapshotIsRejected() throws IOException {
+		// one venue with no strings, so the schedule count follows the null lengths
+		List<Venue> venues = new ArrayList<Venue>();
+		Venue venue = new Venue();
+		venue.setId(1);
+		venue.setSchedule(new ArrayList<ScheduleItem>());
+		venues.add(venue);
+		int scheduleCountOffset = FIRST_NAME_OFFSET + 11 * 4;
+
+		assertCorruptRejected(venues, 0, 0x12345678);               // magic
+		assertCorruptRejected(venues, VERSION_OFFSET, 99);          // version
+		assertCorruptRejected(venues, COUNT_OFFSET, Integer.MAX_VALUE);
+		assertCorruptRejected(venues, COUNT_OFFSET, -5);
+		assertCorruptRejected(venues, COUNT_OFFSET, 2);             // more venues than written
+		assertCorruptRejected(venues, FIRST_NAME_OFFSET, Integer.MAX_VALUE);
+		assertCorruptRejected(venues, FIRST_NAME_OFFSET, 10);       // runs into the next field
+		assertCorruptRejected(venues, scheduleCountOffset, Integer.MAX_VALUE);
+		assertCorruptRejected(venues, scheduleCountOffset, 1);
+	}
+
+	/**
+	 * Write the venues, overwrite an int at offset, and check the snapshot
+	 * no longer reads.
+	 */
+	private void assertCorruptRejected(List<Venue> venues, int offset, int value) throws IOException {
+		VenueSnapshot.write(mSnapshotFile, mFeedFile, venues);
+		assertNotNull(VenueSnapshot.read(mSnapshotFile, mFeedFile));
+
+		RandomAccessFile file = new RandomAccessFile(mSnapshotFile, "rw");
+		try {
+			file.seek(offset);
+			file.writeInt(value);
+		} finally {
+			file.close();
+		}
+		assertNull("int " + value + " at " + offset, VenueSnapshot.read(mSnapshotFile, mFeedFile));
+	}
+
+	private static void writeFile(File file, byte[] data) throws IOException {
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(data);
+		} finally {
+			outputStream.close();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.rogerang.phunwaresample.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link VenueSpatialIndex}, checked against a brute force scan.
+ */
+public class VenueSpatialIndexTest {
+	private static final double TOLERANCE = 1e-3; // meters
+
+	private static Venue venue(long id, double latitude, double longitude) {
+		Venue venue = new Venue();
+		venue.setId(id);
+		venue.setLatitude(latitude);
+		venue.setLongitude(longitude);
+		return venue;
+	}
+
+	/**
+	 * Venues over the whole globe, plus a cluster sharing one location and
+	 * some on the poles and the date line.
+	 */
+	private static List<Venue> randomVenues(Random random, int count) {
+		List<Venue> venues = new ArrayList<Venue>();
+		for (int i = 0; i < count; i++) {
+			double latitude = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+			venues.add(venue(venues.size(), latitude, 360 * random.nextDouble() - 180));
+		}
+		for (int i = 0; i < 500; i++) {
+			venues.add(venue(venues.size(), 33.5276, -112.2626));
+		}
+		venues.add(venue(venues.size(), 90, 0));
+		venues.add(venue(venues.size(), -90, 45));
+		venues.add(venue(venues.size(), 10, 180));
+		venues.add(venue(venues.size(), 10, -179.999));
+		return venues;
+	}
+
+	private static double distance(Venue venue, double latitude, double longitude) {
+		return VenueSpatialIndex.distance(latitude, longitude, venue.getLatitude(), venue.getLongitude());
+	}
+
+	@Test
+	public void nearestMatchesBruteForce() {
+		Random random = new Random(9);
+		List<Venue> venues = randomVenues(random, 5000);
+		VenueSpatialIndex index = new VenueSpatialIndex(venues);
+		assertEquals(venues.size(), index.size());
+
+		for (int q = 0; q < 100; q++) {
+			double latitude = q % 50 == 0 ? 89.9 : Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+			double longitude = q % 40 == 0 ? 179.99 : 360 * random.nextDouble() - 180;
+			int k = 1 + random.nextInt(20);
+
+			double[] expected = new double[venues.size()];
+			for (int i = 0; i < venues.size(); i++) {
+				expected[i] = distance(venues.get(i), latitude, longitude);
+			}
+			Arrays.sort(expected);
+
+			List<Venue> nearest = index.nearest(latitude, longitude, k);
+			assertEquals(k, nearest.size());
+			for (int i = 0; i < k; i++) {
+				// ties may come back in any order, so compare distances
+				assertEquals(expected[i], distance(nearest.get(i), latitude, longitude), TOLERANCE);
+			}
+		}
+	}
+
+	@Test
+	public void nearestOfAllListsEveryVenueByDistance() {
+		Random random = new Random(3);
+		List<Venue> venues = randomVenues(random, 2000);
+		VenueSpatialIndex index = new VenueSpatialIndex(venues);
+
+		List<Venue> sorted = index.nearest(33.5, -112.3, index.size());
+		assertEquals(venues.size(), sorted.size());
+		assertEquals(new HashSet<Venue>(venues), new HashSet<Venue>(sorted));
+		for (int i = 1; i < sorted.size(); i++) {
+			assertTrue(distance(sorted.get(i - 1), 33.5, -112.3)
+					<= distance(sorted.get(i), 33.5, -112.3) + TOLERANCE);
+		}
+	}
+
+	@Test
+	public void withinRadiusMatchesBruteForce() {
+		Random random = new Random(5);
+		List<Venue> venues = randomVenues(random, 5000);
+		VenueSpatialIndex index = new VenueSpatialIndex(venues);
+
+		for (int q = 0; q < 100; q++) {
+			double latitude = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+			double longitude = 360 * random.nextDouble() - 180;
+			double meters = Math.pow(10, 3 + 4 * random.nextDouble()); // 1 km to 10000 km
+
+			Set<Venue> found = new HashSet<Venue>(index.withinRadius(latitude, longitude, meters));
+			for (Venue venue : venues) {
+				double d = distance(venue, latitude, longitude);
+				if (d < meters - TOLERANCE) {
+					assertTrue(found.contains(venue));
+				} else if (d > meters + TOLERANCE) {
+					assertTrue(!found.contains(venue));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void withinRadiusOfWholeEarthFindsEverything() {
+		List<Venue> venues = randomVenues(new Random(1), 1000);
+		VenueSpatialIndex index = new VenueSpatialIndex(venues);
+		assertEquals(venues.size(), index.withinRadius(0, 0, Math.PI * VenueSpatialIndex.EARTH_RADIUS).size());
+		assertEquals(0, index.withinRadius(0, 0, -1).size());
+	}
+
+	@Test
+	public void emptyAndSmallIndexes() {
+		VenueSpatialIndex empty = new VenueSpatialIndex(Collections.<Venue> emptyList());
+		assertEquals(0, empty.nearest(0, 0, 5).size());
+		assertEquals(0, empty.withinRadius(0, 0, 1000).size());
+
+		Venue only = venue(1, 10, 20);
+		VenueSpatialIndex single = new VenueSpatialIndex(Collections.singletonList(only));
+		assertEquals(Collections.singletonList(only), single.nearest(-10, -20, 5));
+		assertEquals(0, single.nearest(0, 0, 0).size());
+	}
+
+	@Test
+	public void distanceIsGreatCircle() {
+		double oneDegree = VenueSpatialIndex.EARTH_RADIUS * Math.PI / 180;
+		assertEquals(oneDegree, VenueSpatialIndex.distance(10, 30, 11, 30), TOLERANCE);
+		assertEquals(oneDegree, VenueSpatialIndex.distance(0, 179.5, 0, -179.5), TOLERANCE);
+		assertEquals(Math.PI * VenueSpatialIndex.EARTH_RADIUS, VenueSpatialIndex.distance(90, 0, -90, 0), TOLERANCE);
+		assertEquals(0, VenueSpatialIndex.distance(45, 45, 45, 45), 0);
+	}
+}